@@ -0,0 +1,84 @@
+package com.craftinginterpreters.Lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+*  Core scaling of 'firse parallel'. Every operation runs Programs.PARALLEL_SUM inside a ForkJoinPool
+*  of 'threads' workers, which the loop then splits its range across (ParallelLoop uses the pool it is
+*  started from). sequential runs the plain loop version on the benchmark thread, the baseline the
+*  parallel loop has to beat; it doesn't depend on threads.
+*
+*  Speedup is sequential / parallel, it can't exceed the number of cores the machine has.
+* */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelLoopBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"tree", "closure"})
+    public String engine;
+
+    private List<Stmt> sequential;
+    private List<Stmt> parallel;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp(){
+        sequential = Programs.compile(Programs.SEQUENTIAL_SUM);
+        parallel = Programs.compile(Programs.PARALLEL_SUM);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown(){
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void sequential(){
+        run(sequential);
+    }
+
+    @Benchmark
+    public void parallel(){
+        pool.submit(() -> run(parallel)).join();
+    }
+
+    private void run(List<Stmt> statements){
+        switch (engine){
+            case "tree":
+                new Interpreter().interpret(statements);
+                break;
+            case "closure": {
+                Environment globals = new Environment();
+                Interpreter.defineNatives(globals);
+                new ClosureCompiler().compile(statements).run(globals);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("No engine " + engine);
+        }
+        if (Lox.hadRuntimeError) throw new IllegalStateException("Sum failed on " + engine);
+    }
+}
@@ -0,0 +1,58 @@
+package com.craftinginterpreters.Lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+*  Parser throughput on tokens scanned once in setup. One operation parses about 1 MiB of source,
+*  so ops/s is roughly MiB/s. "program" is the statement mix of Programs.source, "expressions" is
+*  nothing but deeply nested expressions, Programs.expressions.
+*
+*  Q: How is the Pratt parser compared with the recursive descent one it replaced?
+*  A: Run this benchmark against the interpreter of the commit before it, b97b7b8^ (f1d50aa), with
+*     today's build, and against the current tree:
+*
+*         git worktree add --detach ../jlox-descent b97b7b8^
+*         git archive HEAD build.gradle settings.gradle jmh | tar -x -C ../jlox-descent
+*         (cd ../jlox-descent && gradle :jmh:jmh -Pbenchmarks=ParserThroughputBenchmark --args=ParserThroughput)
+*         gradle :jmh:jmh -Pbenchmarks=ParserThroughputBenchmark --args=ParserThroughput
+*
+*     -Pbenchmarks leaves out the other benchmarks, they use parts of the interpreter that commit
+*     doesn't have. Both parsers get the same tokens: Programs generates the same sources for a size.
+* */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserThroughputBenchmark {
+    @Param({"program", "expressions"})
+    public String source;
+
+    private List<Token> tokens;
+
+    @Setup
+    public void setUp(){
+        String text = source.equals("program") ? Programs.source(1 << 20) : Programs.expressions(1 << 20);
+        tokens = new Scanner(text).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse(){
+        return new Parser(tokens).parse();
+    }
+}
@@ -0,0 +1,66 @@
+package com.craftinginterpreters.Lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+*  End to end run of the programs in Programs on every engine. The source is compiled once in setup,
+*  each operation runs it on fresh globals, like jlox does for a script.
+* */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+    @Param({"fib", "breakLoop", "nestedLoops", "stringBuilding", "deepScopes"})
+    public String program;
+
+    @Param({"tree", "specializing", "closure", "vm"})
+    public String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp(){
+        statements = Programs.compile(Programs.named(program));
+    }
+
+    @Benchmark
+    public void run(){
+        switch (engine){
+            case "tree":
+                new Interpreter().interpret(statements);
+                break;
+            case "specializing":
+                new SpecializingInterpreter().interpret(statements);
+                break;
+            case "closure": {
+                Environment globals = new Environment();
+                Interpreter.defineNatives(globals);
+                new ClosureCompiler().compile(statements).run(globals);
+                break;
+            }
+            case "vm":
+                new VM().interpret(new Compiler().compile(statements));
+                break;
+            default:
+                throw new IllegalArgumentException("No engine " + engine);
+        }
+        if (Lox.hadRuntimeError) throw new IllegalStateException(program + " failed on " + engine);
+    }
+}
@@ -0,0 +1,164 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.List;
+import java.util.Random;
+
+/*
+*  Lox sources the benchmarks run. The programs don't print, so only the interpreter is measured.
+* */
+
+final class Programs {
+    private Programs(){}
+
+    // Recursive calls and returns.
+    static final String FIB =
+            "fun fib(n) {\n" +
+            "    if (n < 2) { return n; }\n" +
+            "    return fib(n - 1) + fib(n - 2);\n" +
+            "}\n" +
+            "var result = fib(20);\n";
+
+    // Leaves a short inner loop with break 4 times per outer iteration.
+    static final String BREAK_LOOP =
+            "var hits = 0;\n" +
+            "var i = 0;\n" +
+            "jabtak (i < 50000) {\n" +
+            "    var j = 0;\n" +
+            "    jabtak (true) {\n" +
+            "        j = j + 1;\n" +
+            "        if (j > 3) { break; }\n" +
+            "    }\n" +
+            "    hits = hits + j;\n" +
+            "    i = i + 1;\n" +
+            "}\n";
+
+    // Arithmetic, comparisons and local assignments in a tight loop.
+    static final String NESTED_LOOPS =
+            "var sum = 0;\n" +
+            "firse (var i = 0; i < 300; i = i + 1) {\n" +
+            "    firse (var j = 0; j < 300; j = j + 1) {\n" +
+            "        sum = sum + i * j;\n" +
+            "    }\n" +
+            "}\n";
+
+    // Appends, repetition and the comparison which flattens the result.
+    static final String STRING_BUILDING =
+            "var s = \"\";\n" +
+            "firse (var i = 0; i < 20000; i = i + 1) {\n" +
+            "    s = s + \"x\";\n" +
+            "}\n" +
+            "var same = s == \"x\" * 20000;\n";
+
+    // Variables read and written several scopes out.
+    static final String DEEP_SCOPES =
+            "var total = 0;\n" +
+            "firse (var i = 0; i < 20000; i = i + 1) {\n" +
+            "    var a = i;\n" +
+            "    {\n" +
+            "        var b = a + 1;\n" +
+            "        {\n" +
+            "            var c = b + 1;\n" +
+            "            {\n" +
+            "                var d = c + 1;\n" +
+            "                {\n" +
+            "                    var e = d + 1;\n" +
+            "                    total = total + a + b + c + d + e;\n" +
+            "                }\n" +
+            "            }\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    // The same reduction as a plain loop and as a parallel loop, see ParallelLoopBenchmark.
+    static final String WORK =
+            "fun work(i) {\n" +
+            "    var x = i;\n" +
+            "    firse (var k = 0; k < 50; k = k + 1) {\n" +
+            "        x = x * 0.5 + k;\n" +
+            "    }\n" +
+            "    return x;\n" +
+            "}\n" +
+            "var sum = 0;\n";
+
+    static final String SEQUENTIAL_SUM = WORK +
+            "firse (var i = 0; i < 20000; i = i + 1) {\n" +
+            "    sum = sum + work(i);\n" +
+            "}\n";
+
+    static final String PARALLEL_SUM = WORK +
+            "firse parallel (var i = 0; i < 20000; i = i + 1) reduce (+ sum) {\n" +
+            "    sum = sum + work(i);\n" +
+            "}\n";
+
+    static String named(String name){
+        switch (name){
+            case "fib": return FIB;
+            case "breakLoop": return BREAK_LOOP;
+            case "nestedLoops": return NESTED_LOOPS;
+            case "stringBuilding": return STRING_BUILDING;
+            case "deepScopes": return DEEP_SCOPES;
+            default: throw new IllegalArgumentException("No program " + name);
+        }
+    }
+
+    // A mix of declarations, functions, loops and expressions, repeated to at least size chars.
+    static String source(int size){
+        String chunk = FIB + NESTED_LOOPS + STRING_BUILDING + DEEP_SCOPES +
+                "var message = \"total: \" + total;\n" +
+                "// comments and blank lines are scanned too\n\n" +
+                "fun max(a, b) { if (a > b) { return a; } else { return b; } }\n" +
+                "var m = max(total, sum) / 2 - (3.25 * -result) >= 10 and !same or nil == false;\n";
+        StringBuilder source = new StringBuilder(size + chunk.length());
+        while (source.length() < size){
+            source.append(chunk);
+        }
+        return source.toString();
+    }
+
+    // Print statements of random nested expressions, repeated to at least size chars. Always the same
+    // for a size, for comparing parsers.
+    static String expressions(int size){
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder(size + 256);
+        while (source.length() < size){
+            source.append("print ");
+            expression(random, 5, source);
+            source.append(";\n");
+        }
+        return source.toString();
+    }
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "<", ">=", "==", "!=", "and", "or"};
+    private static final String[] OPERANDS = {"a", "total", "1", "2.5", "\"s\"", "true", "nil", "f(a, 2)"};
+
+    private static void expression(Random random, int depth, StringBuilder out){
+        if (depth == 0 || random.nextInt(5) == 0){
+            out.append(OPERANDS[random.nextInt(OPERANDS.length)]);
+            return;
+        }
+        switch (random.nextInt(6)){
+            case 0:
+                out.append('-');
+                expression(random, depth - 1, out);
+                break;
+            case 1:
+                out.append('(');
+                expression(random, depth - 1, out);
+                out.append(')');
+                break;
+            default:
+                expression(random, depth - 1, out);
+                out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                expression(random, depth - 1, out);
+        }
+    }
+
+    // Parsed, optimized and resolved as Lox.run does. Fails instead of running a broken program.
+    static List<Stmt> compile(String source){
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        if (Lox.hadError) throw new IllegalStateException("Benchmark program doesn't compile");
+        statements = new Optimizer().optimize(statements);
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,79 @@
+package com.craftinginterpreters.Lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+*  Scanner throughput, for each way jlox scans a script. One operation scans about 1 MiB of source,
+*  so ops/s is roughly MiB/s.
+*      scanTokens   : Scanner over a String, every Token made
+*      scanToBuffer : Scanner over a String into a TokenBuffer, what LoxProgram does
+*      scanReader   : Scanner over a Reader, tokens pulled one at a time, --scanner=reader
+*      scanMapped   : ByteScanner over the file mapped again per operation, --scanner=mmap
+* */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerThroughputBenchmark {
+    private String source;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = Programs.source(1 << 20);
+        file = Files.createTempFile("scanner-benchmark", ".lox");
+        Files.writeString(file, source, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens(){
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanToBuffer(){
+        return new Scanner(source).scanToBuffer();
+    }
+
+    @Benchmark
+    public int scanReader(){
+        Scanner scanner = new Scanner(new StringReader(source));
+        int count = 1;
+        while (scanner.nextToken().type != TokenType.EOF) count++;
+        return count;
+    }
+
+    @Benchmark
+    public int scanMapped() throws IOException {
+        ByteScanner scanner = new ByteScanner(file);
+        int count = 1;
+        while (scanner.nextToken().type != TokenType.EOF) count++;
+        return count;
+    }
+}
@@ -26,6 +26,22 @@ class AstPrinter implements Expr.Visitor<String> {
     @Override
     public String visitcallExpr(Expr.call expr){ return  "Expr.call AstPrinter not implemented";}
 
+    @Override
+    public String visitSpawnExpr(Expr.Spawn expr){ return  "Expr.Spawn AstPrinter not implemented";}
+
+    @Override
+    public String visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        return parenthesize("array", expr.elements.toArray(new Expr[0]));
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr){return parenthesize("[]", expr.object, expr.index);}
+
+    @Override
+    public String visitIndexSetExpr(Expr.IndexSet expr){
+        return parenthesize("[]=", expr.object, expr.index, expr.value);
+    }
+
     @Override
     public String visitAssignExpr(Expr.Assign expr) {return parenthesize(expr.name.lexeme, expr.Value);}
 
@@ -0,0 +1,262 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.craftinginterpreters.Lox.TokenType.*;
+
+/*
+*  Scanner for UTF-8 (or plain ASCII) files which works on the file's bytes, memory mapped, instead of
+*  decoded chars. Every byte is classified with one lookup in a 256 entry table, and text is decoded
+*  only where a token needs it: identifiers are interned straight from the bytes, string literals are
+*  decoded from UTF-8, punctuation shares constant lexemes.
+*
+*  Tokens, errors and line numbers are the same as Scanner's. Anything outside ASCII is only valid
+*  inside strings and comments, elsewhere a UTF-8 sequence is one "Unexpected character." like the
+*  char it decodes to.
+*
+*  Usage: jlox --scanner=mmap script
+* */
+
+class ByteScanner
+{
+    // Character classes.
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte DIGIT = 3;
+    private static final byte ALPHA = 4;
+    private static final byte SINGLE = 5;     // a token by itself
+    private static final byte OPERATOR = 6;   // a token by itself or followed by '='
+    private static final byte SLASH_CLASS = 7;
+    private static final byte QUOTE = 8;
+    private static final byte UTF8_LEAD = 9;
+
+    private static final byte[] CLASSES = new byte[256];
+    private static final TokenType[] SINGLE_TYPES = new TokenType[128];
+    private static final TokenType[] EQUAL_TYPES = new TokenType[128];
+    private static final String[] LEXEMES = new String[TokenType.values().length];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) CLASSES[c] = ALPHA;
+        for (int c = 'A'; c <= 'Z'; c++) CLASSES[c] = ALPHA;
+        CLASSES['_'] = ALPHA;
+        for (int c = '0'; c <= '9'; c++) CLASSES[c] = DIGIT;
+        CLASSES[' '] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['/'] = SLASH_CLASS;
+        CLASSES['"'] = QUOTE;
+        // Continuation bytes (0x80-0xBF) stay OTHER, they are skipped after a lead byte.
+        for (int c = 0xC0; c < 0x100; c++) CLASSES[c] = UTF8_LEAD;
+
+        single('(', LEFT_PAREN);
+        single(')', RIGHT_PAREN);
+        single('{', LEFT_BRACE);
+        single('}', RIGHT_BRACE);
+        single('[', LEFT_BRACKET);
+        single(']', RIGHT_BRACKET);
+        single(',', COMMA);
+        single('.', DOT);
+        single('-', MINUS);
+        single('+', PLUS);
+        single(';', SEMICOLON);
+        single('*', STAR);
+        operator('!', BANG, BANG_EQUAL);
+        operator('=', EQUAL, EQUAL_EQUAL);
+        operator('<', LESS, LESS_EQUAL);
+        operator('>', GREATER, GREATER_EQUAL);
+        LEXEMES[SLASH.ordinal()] = "/";
+    }
+
+    private static void single(char c, TokenType type){
+        CLASSES[c] = SINGLE;
+        SINGLE_TYPES[c] = type;
+        LEXEMES[type.ordinal()] = String.valueOf(c);
+    }
+
+    private static void operator(char c, TokenType type, TokenType withEqual){
+        CLASSES[c] = OPERATOR;
+        SINGLE_TYPES[c] = type;
+        EQUAL_TYPES[c] = withEqual;
+        LEXEMES[type.ordinal()] = String.valueOf(c);
+        LEXEMES[withEqual.ordinal()] = c + "=";
+    }
+
+    private final MappedByteBuffer source;
+    private final int limit;
+    private final SymbolTable symbols = new SymbolTable();
+    private final ErrorReporter reporter;
+    private int current = 0;
+    private int line = 1;
+
+    ByteScanner(Path path) throws IOException
+    {
+        this(map(path));
+    }
+
+    // Scans a file already mapped with map, e.g. after ScriptCache hashed it.
+    ByteScanner(MappedByteBuffer source)
+    {
+        this(source, Lox.CONSOLE);
+    }
+
+    ByteScanner(MappedByteBuffer source, ErrorReporter reporter)
+    {
+        this.source = source;
+        this.limit = source.limit();
+        this.reporter = reporter;
+    }
+
+    static MappedByteBuffer map(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large to map: " + path);
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private int peek(int at)
+    {
+        return at < limit ? source.get(at) & 0xff : 0;
+    }
+
+    // Next token of the file, EOF at the end.
+    Token nextToken()
+    {
+        while (current < limit)
+        {
+            int start = current;
+            int c = source.get(current++) & 0xff;
+            switch (CLASSES[c]){
+                case SPACE:
+                    break;
+                case NEWLINE:
+                    line++;
+                    break;
+                case SINGLE:
+                    return punctuation(SINGLE_TYPES[c]);
+                case OPERATOR:
+                    if (peek(current) == '='){
+                        current++;
+                        return punctuation(EQUAL_TYPES[c]);
+                    }
+                    return punctuation(SINGLE_TYPES[c]);
+                case SLASH_CLASS:
+                    if (peek(current) == '/'){
+                        while (current < limit && source.get(current) != '\n') current++;
+                    } else if (peek(current) == '*'){
+                        current++;
+                        blockComment();
+                    } else {
+                        return punctuation(SLASH);
+                    }
+                    break;
+                case QUOTE: {
+                    Token string = string(start);
+                    if (string != null) return string;
+                    break;
+                }
+                case DIGIT:
+                    return number(start);
+                case ALPHA:
+                    return identifier(start);
+                case UTF8_LEAD:
+                    while (CLASSES[peek(current)] == OTHER && peek(current) >= 0x80) current++;
+                    reporter.error(line, "Unexpected character.");
+                    break;
+                default:
+                    reporter.error(line, "Unexpected character.");
+            }
+        }
+        return new Token(EOF, "", null, line);
+    }
+
+    private Token punctuation(TokenType type)
+    {
+        return new Token(type, LEXEMES[type.ordinal()], null, line);
+    }
+
+    // Same nesting rules as Scanner: each '/*' opens, each '*/' closes.
+    private void blockComment()
+    {
+        int open = 1;
+        while (open != 0 && current < limit)
+        {
+            int c = source.get(current) & 0xff;
+            int next = peek(current + 1);
+            if (c == '/' && next == '*')
+            {
+                open++;
+                current++;
+            }
+            else if (c == '*' && next == '/')
+            {
+                open--;
+                current++;
+            }
+            if (peek(current) == '\n') line++;
+            current++;
+        }
+        if (current >= limit && open != 0) reporter.error(line, "Nested comments are not terminated");
+    }
+
+    private Token string(int start)
+    {
+        while (current < limit && source.get(current) != '"')
+        {
+            if (source.get(current) == '\n') line++;
+            current++;
+        }
+
+        if (current >= limit)
+        {
+            reporter.error(line, "unterminated string");
+            return null;
+        }
+        current++;
+
+        byte[] bytes = new byte[current - start];
+        source.get(start, bytes);
+        String lexeme = new String(bytes, StandardCharsets.UTF_8);
+        return new Token(STRING, lexeme, lexeme.substring(1, lexeme.length() - 1), line);
+    }
+
+    private Token number(int start)
+    {
+        while (CLASSES[peek(current)] == DIGIT) current++;
+
+        if (peek(current) == '.' && CLASSES[peek(current + 1)] == DIGIT)
+        {
+            current++;
+            while (CLASSES[peek(current)] == DIGIT) current++;
+        }
+
+        String lexeme = ascii(start, current);
+        return new Token(NUMBER, lexeme, Double.parseDouble(lexeme), line);
+    }
+
+    private Token identifier(int start)
+    {
+        int c;
+        while ((c = CLASSES[peek(current)]) == ALPHA || c == DIGIT) current++;
+
+        int symbol = symbols.intern(source, start, current);
+        TokenType type = Scanner.keyword(symbol);
+        return new Token(type == null ? IDENTIFIERS : type, symbols.name(symbol), null, line);
+    }
+
+    private String ascii(int start, int end)
+    {
+        byte[] bytes = new byte[end - start];
+        source.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,33 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+*  A chunk is the compiled code of one function. Next to every byte we keep the Token it was compiled
+*  from (like clox keeps line numbers), so the VM can report runtime errors exactly like the tree
+*  walker does.
+* */
+
+class Chunk {
+    byte[] code = new byte[64];
+    Token[] tokens = new Token[64];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+
+    void write(int value, Token token){
+        if (count == code.length){
+            code = Arrays.copyOf(code, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+        }
+        code[count] = (byte) value;
+        tokens[count] = token;
+        count++;
+    }
+
+    int addConstant(Object value){
+        constants.add(value);
+        return constants.size() - 1;
+    }
+}
@@ -0,0 +1,622 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  ClosureCompiler walks a resolved AST once and turns every node into a Java lambda which already
+*  knows its children and its operator. Running the program is then just calling lambdas: no accept,
+*  no visitXxx and no switch on expr.operator.type per evaluation.
+*
+*  The compiled Program doesn't capture any runtime state, the globals and where print writes and runtime
+*  errors go are passed in on every run as a Run, so the same Program can be run any number of times.
+*
+*  Statements report how they completed through their return value instead of exceptions:
+*      null     : completed normally
+*      BREAK    : a break is leaving the innermost loop
+*      TailCall : 'return f(...)' is leaving the function, f is called after it, see visitReturnStmt
+*      anything else : a return is leaving the function with that value (NIL_RESULT for nil)
+* */
+
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Evaluator>, Stmt.Visitor<ClosureCompiler.Executor> {
+
+    interface Evaluator {
+        Object evaluate(Run run, Environment environment);
+    }
+
+    interface Executor {
+        Object execute(Run run, Environment environment);
+    }
+
+    private static final Object BREAK = new Object();
+    private static final Object NIL_RESULT = new Object();
+
+    // What one run of a Program shares with the functions and tasks it creates, as an Interpreter does.
+    static final class Run {
+        final Environment globals;
+        final PrintWriter out;
+        final ErrorReporter reporter;
+
+        Run(Environment globals, PrintWriter out, ErrorReporter reporter){
+            this.globals = globals;
+            this.out = out;
+            this.reporter = reporter;
+        }
+    }
+
+    static class Program {
+        private final Executor[] statements;
+
+        private Program(Executor[] statements){
+            this.statements = statements;
+        }
+
+        void run(Environment globals){
+            run(globals, Interpreter.STDOUT, Lox.CONSOLE);
+        }
+
+        void run(Environment globals, PrintWriter out, ErrorReporter reporter){
+            Run run = new Run(globals, out, reporter);
+            try {
+                for (Executor statement : statements){
+                    // A return at top level ends the script.
+                    Object completion = statement.execute(run, globals);
+                    if (completion instanceof TailCall) ((TailCall) completion).call();
+                    if (completion != null) return;
+                }
+            } catch (RuntimeError error){
+                reporter.runtimeError(error);
+            } finally {
+                LoxTask.reportFailures(globals);
+            }
+        }
+    }
+
+    // Compiled body of a Stmt.Function, shared by every function object created from it.
+    private static class FunctionCode {
+        final String name;
+        final int arity;
+        final int slotCount;
+        final Executor body;
+
+        FunctionCode(String name, int arity, int slotCount, Executor body){
+            this.name = name;
+            this.arity = arity;
+            this.slotCount = slotCount;
+            this.body = body;
+        }
+    }
+
+    private static class ClosureFunction implements SLoxCallable {
+        private final FunctionCode code;
+        private final Run run;
+
+        ClosureFunction(FunctionCode code, Run run){
+            this.code = code;
+            this.run = run;
+        }
+
+        @Override
+        public int arity(){
+            return code.arity;
+        }
+
+        // Runs the tail calls left by the body in a loop, as SLoxFunction does for the tree walker.
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments){
+            ClosureFunction function = this;
+            Environment environment = new Environment(run.globals, code.slotCount);
+            for (;;){
+                for (int i = 0; i < function.code.arity; i++){
+                    environment.defineAt(i, arguments.get(i));
+                }
+                Object result = function.code.body.execute(function.run, environment);
+                if (!(result instanceof TailCall)) return result == NIL_RESULT || result == BREAK ? null : result;
+
+                TailCall tailCall = (TailCall) result;
+                // A self tail call gets the same frame back, cleared.
+                if (tailCall.function == function){
+                    environment.clearSlots();
+                } else {
+                    function = tailCall.function;
+                    environment = new Environment(function.run.globals, function.code.slotCount);
+                }
+                arguments = tailCall.arguments;
+            }
+        }
+
+        @Override
+        public String toString(){
+            return "<fn " + code.name + ">";
+        }
+    }
+
+    // A pending call returned from a function body, see visitReturnStmt.
+    private static final class TailCall {
+        final ClosureFunction function;
+        final List<Object> arguments;
+
+        TailCall(ClosureFunction function, List<Object> arguments){
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        Object call(){
+            return function.call(null, arguments);
+        }
+    }
+
+    Program compile(List<Stmt> statements){
+        return new Program(compileAll(statements));
+    }
+
+    private Executor[] compileAll(List<Stmt> statements){
+        Executor[] executors = new Executor[statements.size()];
+        for (int i = 0; i < executors.length; i++){
+            executors[i] = statements.get(i).accept(this);
+        }
+        return executors;
+    }
+
+    private Evaluator compile(Expr expr){
+        return expr.accept(this);
+    }
+
+    private static Executor sequence(Executor[] statements){
+        if (statements.length == 1) return statements[0];
+        return (run, environment) -> {
+            for (Executor statement : statements){
+                Object completion = statement.execute(run, environment);
+                if (completion != null) return completion;
+            }
+            return null;
+        };
+    }
+
+    // Same rule as Interpreter.executeScope: only blocks which declare something get a frame.
+    private Executor scope(Stmt.Block block){
+        Executor body = sequence(compileAll(block.statements));
+        int slotCount = block.slotCount;
+        if (slotCount == 0) return body;
+        return (run, environment) -> body.execute(run, new Environment(environment, slotCount));
+    }
+
+    @Override
+    public Executor visitExpressionStmt(Stmt.Expression stmt){
+        Evaluator expression = compile(stmt.expression);
+        return (run, environment) -> {
+            expression.evaluate(run, environment);
+            return null;
+        };
+    }
+
+    @Override
+    public Executor visitPrintStmt(Stmt.Print stmt){
+        Evaluator expression = compile(stmt.expression);
+        return (run, environment) -> {
+            run.out.println(Interpreter.Stringify(expression.evaluate(run, environment)));
+            return null;
+        };
+    }
+
+    @Override
+    public Executor visitVarStmt(Stmt.Var stmt){
+        Evaluator initializer = stmt.initializer != null ? compile(stmt.initializer) : (run, environment) -> null;
+        String name = stmt.name.lexeme;
+        int slot = stmt.slot;
+        if (slot < 0){
+            return (run, environment) -> {
+                run.globals.define(name, initializer.evaluate(run, environment));
+                return null;
+            };
+        }
+        return (run, environment) -> {
+            environment.defineAt(slot, initializer.evaluate(run, environment));
+            return null;
+        };
+    }
+
+    @Override
+    public Executor visitBlockStmt(Stmt.Block stmt){
+        return scope(stmt);
+    }
+
+    @Override
+    public Executor visitIfStmt(Stmt.If stmt){
+        Evaluator condition = compile(stmt.expr);
+        Executor thenBranch = scope(stmt.ifBlock);
+        if (stmt.elseBlock == null){
+            return (run, environment) -> Interpreter.isTruthy(condition.evaluate(run, environment))
+                    ? thenBranch.execute(run, environment) : null;
+        }
+        Executor elseBranch = scope(stmt.elseBlock);
+        return (run, environment) -> Interpreter.isTruthy(condition.evaluate(run, environment))
+                ? thenBranch.execute(run, environment) : elseBranch.execute(run, environment);
+    }
+
+    @Override
+    public Executor visitWhileStmt(Stmt.While stmt){
+        Evaluator condition = stmt.condition != null ? compile(stmt.condition) : (run, environment) -> true;
+        Executor body = stmt.body.accept(this);
+        return (run, environment) -> {
+            while (Interpreter.isTruthy(condition.evaluate(run, environment))){
+                Object completion = body.execute(run, environment);
+                if (completion == BREAK) break;
+                if (completion != null) return completion;
+            }
+            return null;
+        };
+    }
+
+    // Same steps as Interpreter.visitParallelStmt, a piece only needs an environment of its own.
+    @Override
+    public Executor visitParallelStmt(Stmt.Parallel stmt){
+        Evaluator start = compile(stmt.start);
+        Evaluator end = compile(stmt.end);
+        Token operator = stmt.operator;
+        Evaluator accumulator = operator != null ? compile(stmt.accumulator) : null;
+        Executor body = stmt.body.accept(this);
+        int slotCount = stmt.slotCount;
+        Token name = operator != null ? stmt.accumulator.name : null;
+        int depth = operator != null ? stmt.accumulator.depth : -1;
+        int slot = operator != null ? stmt.accumulator.slot : -1;
+
+        return (run, environment) -> {
+            Object startValue = start.evaluate(run, environment);
+            long count = ParallelLoop.iterations(stmt, startValue, end.evaluate(run, environment));
+            double first = (double) startValue;
+            Object initial = operator != null ? accumulator.evaluate(run, environment) : null;
+
+            Object reduced = ParallelLoop.run(count, operator, (from, to) -> {
+                Environment scope = new Environment(environment, slotCount);
+                if (operator != null) scope.defineAt(1, ParallelLoop.identity(operator));
+                for (long i = from; i < to; i++){
+                    scope.defineAt(0, first + i);
+                    body.execute(run, scope);
+                }
+                return operator != null ? scope.getAt(0, 1, name) : null;
+            });
+
+            if (operator != null){
+                Object result = ParallelLoop.combine(operator, initial, reduced);
+                if (depth < 0){
+                    run.globals.assign(name, result);
+                } else {
+                    environment.assignAt(depth, slot, result);
+                }
+            }
+            return null;
+        };
+    }
+
+    @Override
+    public Executor visitBreakStmt(Stmt.Break stmt){
+        return (run, environment) -> BREAK;
+    }
+
+    @Override
+    public Executor visitFunctionStmt(Stmt.Function stmt){
+        FunctionCode code = new FunctionCode(stmt.name.lexeme, stmt.params.size(), stmt.slotCount,
+                sequence(compileAll(stmt.body)));
+        String name = stmt.name.lexeme;
+        int slot = stmt.slot;
+        boolean memo = stmt.memo;
+        if (slot < 0){
+            return (run, environment) -> {
+                run.globals.define(name, function(code, run, memo));
+                return null;
+            };
+        }
+        return (run, environment) -> {
+            environment.defineAt(slot, function(code, run, memo));
+            return null;
+        };
+    }
+
+    private static SLoxCallable function(FunctionCode code, Run run, boolean memo){
+        SLoxCallable function = new ClosureFunction(code, run);
+        return memo ? new MemoFunction(function) : function;
+    }
+
+    @Override
+    public Executor visitReturnStmt(Stmt.Return stmt){
+        if (stmt.value == null) return (run, environment) -> NIL_RESULT;
+        if (stmt.value instanceof Expr.call) return tailCall((Expr.call) stmt.value);
+        Evaluator value = compile(stmt.value);
+        return (run, environment) -> {
+            Object result = value.evaluate(run, environment);
+            return result == null ? NIL_RESULT : result;
+        };
+    }
+
+    /*
+    *  'return f(...)' with f a closure function returns a TailCall instead of calling f, and
+    *  ClosureFunction.call runs it once this function's Java frames are gone. Recursion in tail
+    *  position then takes constant Java stack, like Interpreter.tailCall does for the tree walker.
+    * */
+    private Executor tailCall(Expr.call expr){
+        Evaluator callee = compile(expr.callee);
+        Evaluator[] arguments = new Evaluator[expr.Arguments.size()];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = compile(expr.Arguments.get(i));
+        }
+        Token paren = expr.paren;
+
+        return (run, environment) -> {
+            Object function = callee.evaluate(run, environment);
+
+            List<Object> argumentValues = new ArrayList<>(arguments.length);
+            for (Evaluator argument : arguments){
+                argumentValues.add(argument.evaluate(run, environment));
+            }
+
+            if (function instanceof ClosureFunction && argumentValues.size() == ((ClosureFunction) function).arity()){
+                return new TailCall((ClosureFunction) function, argumentValues);
+            }
+            Object result = call(function, argumentValues, paren);
+            return result == null ? NIL_RESULT : result;
+        };
+    }
+
+    @Override
+    public Evaluator visitLiteralExpr(Expr.Literal expr){
+        Object value = expr.value;
+        return (run, environment) -> value;
+    }
+
+    @Override
+    public Evaluator visitGroupingExpr(Expr.Grouping expr){
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Evaluator visitVariableExpr(Expr.Variable expr){
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+        if (depth < 0){
+            // expr.binding is the same inline cache the Interpreter uses.
+            return (run, environment) -> {
+                Environment.Binding binding = expr.binding;
+                Environment globals = run.globals;
+                if (binding == null || binding.owner != globals){
+                    binding = globals.bindingOf(name);
+                    if (binding == null) return globals.get(name);
+                    expr.binding = binding;
+                }
+                Object value = binding.get();
+                return value != null ? value : globals.get(name);
+            };
+        }
+        return (run, environment) -> environment.getAt(depth, slot, name);
+    }
+
+    @Override
+    public Evaluator visitAssignExpr(Expr.Assign expr){
+        Evaluator value = compile(expr.Value);
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+        if (depth < 0){
+            return (run, environment) -> {
+                Object result = value.evaluate(run, environment);
+                Environment.Binding binding = expr.binding;
+                Environment globals = run.globals;
+                if (binding == null || binding.owner != globals){
+                    binding = globals.bindingOf(name);
+                    if (binding == null) globals.assign(name, result);
+                    expr.binding = binding;
+                }
+                binding.set(result);
+                return result;
+            };
+        }
+        return (run, environment) -> {
+            Object result = value.evaluate(run, environment);
+            environment.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Evaluator visitBinaryExpr(Expr.Binary expr){
+        Evaluator left = compile(expr.left);
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+
+        // Numbers get an inline fast path, everything else goes through Interpreter.binary.
+        switch (operator.type){
+            case PLUS:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a + (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case MINUS:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a - (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case STAR:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a * (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case LESS:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a < (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case LESS_EQUAL:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a <= (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case GREATER:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a > (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case GREATER_EQUAL:
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    if (a instanceof Double && b instanceof Double) return (Double) a >= (Double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case EQUAL_EQUAL:
+                return (run, environment) ->
+                        Interpreter.isEqual(left.evaluate(run, environment), right.evaluate(run, environment));
+            case BANG_EQUAL:
+                return (run, environment) ->
+                        !Interpreter.isEqual(left.evaluate(run, environment), right.evaluate(run, environment));
+            default:
+                // Division checks for zero in Interpreter.binary.
+                return (run, environment) -> {
+                    Object a = left.evaluate(run, environment);
+                    Object b = right.evaluate(run, environment);
+                    return Interpreter.binary(operator, a, b);
+                };
+        }
+    }
+
+    @Override
+    public Evaluator visitUnaryExpr(Expr.Unary expr){
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+        if (operator.type == TokenType.MINUS){
+            return (run, environment) -> {
+                Object value = right.evaluate(run, environment);
+                Interpreter.checkNumberOperand(operator, value);
+                return -(double) value;
+            };
+        }
+        return (run, environment) -> !Interpreter.isTruthy(right.evaluate(run, environment));
+    }
+
+    @Override
+    public Evaluator visitLogicalExpr(Expr.Logical expr){
+        Evaluator left = compile(expr.left);
+        Evaluator right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR){
+            return (run, environment) -> {
+                Object value = left.evaluate(run, environment);
+                return Interpreter.isTruthy(value) ? value : right.evaluate(run, environment);
+            };
+        }
+        return (run, environment) -> {
+            Object value = left.evaluate(run, environment);
+            return !Interpreter.isTruthy(value) ? value : right.evaluate(run, environment);
+        };
+    }
+
+    @Override
+    public Evaluator visitcallExpr(Expr.call expr){
+        Evaluator callee = compile(expr.callee);
+        Evaluator[] arguments = new Evaluator[expr.Arguments.size()];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = compile(expr.Arguments.get(i));
+        }
+        Token paren = expr.paren;
+
+        return (run, environment) -> {
+            Object function = callee.evaluate(run, environment);
+
+            List<Object> argumentValues = new ArrayList<>(arguments.length);
+            for (Evaluator argument : arguments){
+                argumentValues.add(argument.evaluate(run, environment));
+            }
+
+            return call(function, argumentValues, paren);
+        };
+    }
+
+    private static Object call(Object function, List<Object> argumentValues, Token paren){
+        SLoxCallable callable = Interpreter.callable(function, argumentValues.size(), paren);
+        try {
+            // Natives don't use the interpreter, closure functions carry their Run.
+            return callable.call(null, argumentValues);
+        } catch (NativeError error){
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+
+    // Closure functions keep no state between calls, a task can simply call one on its own thread.
+    @Override
+    public Evaluator visitSpawnExpr(Expr.Spawn expr){
+        Evaluator callee = compile(expr.call.callee);
+        Evaluator[] arguments = new Evaluator[expr.call.Arguments.size()];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = compile(expr.call.Arguments.get(i));
+        }
+        Token paren = expr.call.paren;
+
+        return (run, environment) -> {
+            Object function = callee.evaluate(run, environment);
+
+            List<Object> argumentValues = new ArrayList<>(arguments.length);
+            for (Evaluator argument : arguments){
+                argumentValues.add(argument.evaluate(run, environment));
+            }
+
+            Interpreter.callable(function, argumentValues.size(), paren);
+            return LoxTask.start(() -> call(function, argumentValues, paren), run.globals, run.reporter);
+        };
+    }
+
+    @Override
+    public Evaluator visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        Evaluator[] elements = new Evaluator[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++){
+            elements[i] = compile(expr.elements.get(i));
+        }
+
+        return (run, environment) -> {
+            Object[] values = new Object[elements.length];
+            for (int i = 0; i < elements.length; i++){
+                values[i] = elements[i].evaluate(run, environment);
+            }
+            return LoxArray.of(values);
+        };
+    }
+
+    @Override
+    public Evaluator visitIndexExpr(Expr.Index expr){
+        Evaluator object = compile(expr.object);
+        Evaluator index = compile(expr.index);
+        Token bracket = expr.bracket;
+
+        return (run, environment) -> {
+            Object array = object.evaluate(run, environment);
+            Object position = index.evaluate(run, environment);
+            return Interpreter.index(bracket, array, position);
+        };
+    }
+
+    @Override
+    public Evaluator visitIndexSetExpr(Expr.IndexSet expr){
+        Evaluator object = compile(expr.object);
+        Evaluator index = compile(expr.index);
+        Evaluator value = compile(expr.value);
+        Token bracket = expr.bracket;
+
+        return (run, environment) -> {
+            Object array = object.evaluate(run, environment);
+            Object position = index.evaluate(run, environment);
+            Object newValue = value.evaluate(run, environment);
+            return Interpreter.setIndex(bracket, array, position, newValue);
+        };
+    }
+}
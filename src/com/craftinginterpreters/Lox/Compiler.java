@@ -0,0 +1,509 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.Lox.OpCode.*;
+
+/*
+*  Compiler turns resolved Stmt/Expr trees into bytecode for the VM. It runs after the Resolver and
+*  reuses its (depth, slot) pairs: every scope of a function gets a contiguous range of the function's
+*  frame, so a resolved variable becomes base of the scope 'depth' levels up + slot.
+*
+*  Q: Why not push and pop locals on the stack like clox?
+*  A: Resolver already knows how many slots each scope needs, so a frame is laid out once at call time
+*     and the operand stack only ever holds temporaries.
+* */
+
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static class CompileError extends RuntimeException {}
+
+    private static class Scope {
+        final int base;
+        final int size;
+
+        Scope(int base, int size){
+            this.base = base;
+            this.size = size;
+        }
+    }
+
+    private static class Loop {
+        final List<Integer> breakJumps = new ArrayList<>();
+    }
+
+    private VMFunction function;
+    private List<Scope> scopes = new ArrayList<>();
+    private List<Loop> loops = new ArrayList<>();
+    private int stackDepth = 0;
+    // Line of the statement being compiled, where errors without a token of their own are reported.
+    private int line = 0;
+    private final ErrorReporter reporter;
+
+    Compiler(){
+        this(Lox.CONSOLE);
+    }
+
+    Compiler(ErrorReporter reporter){
+        this.reporter = reporter;
+    }
+
+    VMFunction compile(List<Stmt> statements){
+        function = new VMFunction("script", 0);
+        try {
+            for (Stmt statement : statements){
+                compile(statement);
+            }
+            emit(NIL, null);
+            emit(RETURN, null);
+        } catch (CompileError error){
+            return null;
+        }
+        return function;
+    }
+
+    private void compile(Stmt stmt){
+        int enclosing = line;
+        // Bodies of if and loops have no line of their own, they keep their statement's.
+        if (stmt.line != 0) line = stmt.line;
+        stmt.accept(this);
+        line = enclosing;
+    }
+
+    private void compile(Expr expr){
+        expr.accept(this);
+    }
+
+    private Chunk chunk(){
+        return function.chunk;
+    }
+
+    // Tracks how deep the operand stack can get, so the VM can size a frame once at call time.
+    private void emit(byte op, Token token){
+        chunk().write(op, token);
+        switch (op){
+            case CONSTANT: case NIL: case TRUE: case FALSE:
+            case GET_LOCAL: case GET_GLOBAL:
+                adjustStack(1);
+                break;
+            case POP: case DEFINE_LOCAL: case DEFINE_GLOBAL: case PRINT: case RETURN:
+            case EQUAL: case NOT_EQUAL: case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+            case ADD: case SUBTRACT: case MULTIPLY: case DIVIDE: case GET_INDEX:
+                adjustStack(-1);
+                break;
+            case SET_INDEX:
+                adjustStack(-2);
+                break;
+        }
+    }
+
+    private void adjustStack(int delta){
+        stackDepth += delta;
+        if (stackDepth > function.maxStack) function.maxStack = stackDepth;
+    }
+
+    private void emitByte(int value, Token token){
+        chunk().write(value, token);
+    }
+
+    private void emitShort(int value, Token token){
+        chunk().write((value >> 8) & 0xff, token);
+        chunk().write(value & 0xff, token);
+    }
+
+    private void emitConstant(Object value, Token token){
+        emit(CONSTANT, token);
+        emitShort(makeConstant(value, token), token);
+    }
+
+    private int makeConstant(Object value, Token token){
+        int index = chunk().addConstant(value);
+        if (index > 0xffff){
+            throw error(token, "Too many constants in one function.");
+        }
+        return index;
+    }
+
+    private int emitJump(byte op, Token token){
+        emit(op, token);
+        emitShort(0xffff, token);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(int offset, Token token){
+        // -2 to adjust for the bytecode of the jump offset itself.
+        int jump = chunk().count - offset - 2;
+        if (jump > 0xffff){
+            throw error(token, "Too much code to jump over.");
+        }
+        chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart, Token token){
+        emit(LOOP, token);
+        int offset = chunk().count - loopStart + 2;
+        if (offset > 0xffff){
+            throw error(token, "Loop body too large.");
+        }
+        emitShort(offset, token);
+    }
+
+    private void beginScope(int size){
+        int base = 0;
+        if (!scopes.isEmpty()){
+            Scope enclosing = scopes.get(scopes.size() - 1);
+            base = enclosing.base + enclosing.size;
+        }
+        if (base + size > 256){
+            throw error(null, "Too many local variables in function.");
+        }
+        scopes.add(new Scope(base, size));
+        if (base + size > function.frameSize) function.frameSize = base + size;
+    }
+
+    private void endScope(){
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private int localSlot(int depth, int slot){
+        return scopes.get(scopes.size() - 1 - depth).base + slot;
+    }
+
+    private CompileError error(Token token, String message){
+        if (token == null){
+            reporter.error(line, message);
+        } else {
+            reporter.error(token, message);
+        }
+        return new CompileError();
+    }
+
+    private void defineVariable(Token name, int slot){
+        if (slot < 0){
+            emit(DEFINE_GLOBAL, name);
+            emitShort(makeConstant(name, name), name);
+        } else {
+            emit(DEFINE_LOCAL, name);
+            emitByte(localSlot(0, slot), name);
+        }
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt){
+        compile(stmt.expression);
+        emit(POP, null);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt){
+        compile(stmt.expression);
+        emit(PRINT, null);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt){
+        if (stmt.initializer != null){
+            compile(stmt.initializer);
+        } else {
+            emit(NIL, stmt.name);
+        }
+        defineVariable(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt){
+        // Same rule as Interpreter.executeScope: a block without declarations has no frame.
+        if (stmt.slotCount == 0){
+            for (Stmt statement : stmt.statements){
+                compile(statement);
+            }
+            return null;
+        }
+
+        beginScope(stmt.slotCount);
+        // Every execution of a block starts with uninitialized locals, as a fresh Environment would.
+        Scope scope = scopes.get(scopes.size() - 1);
+        emit(CLEAR_LOCALS, null);
+        emitByte(scope.base, null);
+        emitByte(scope.size, null);
+        for (Stmt statement : stmt.statements){
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt){
+        compile(stmt.expr);
+        int thenJump = emitJump(JUMP_IF_FALSE, null);
+        emit(POP, null);
+        compile(stmt.ifBlock);
+
+        int elseJump = emitJump(JUMP, null);
+        patchJump(thenJump, null);
+        // The condition is still on the stack on this path.
+        adjustStack(1);
+        emit(POP, null);
+        if (stmt.elseBlock != null){
+            compile(stmt.elseBlock);
+        }
+        patchJump(elseJump, null);
+        return null;
+    }
+
+    // The VM's frames live on one stack, pieces of a loop would need frames of their own.
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt){
+        throw error(stmt.keyword, "Parallel loops need the tree, specializing or closure engine.");
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt){
+        int loopStart = chunk().count;
+        if (stmt.condition != null){
+            compile(stmt.condition);
+        } else {
+            emit(TRUE, null);
+        }
+        int exitJump = emitJump(JUMP_IF_FALSE, null);
+        emit(POP, null);
+
+        Loop loop = new Loop();
+        loops.add(loop);
+        compile(stmt.body);
+        loops.remove(loops.size() - 1);
+
+        emitLoop(loopStart, null);
+        patchJump(exitJump, null);
+        adjustStack(1);
+        emit(POP, null);
+
+        // A break leaves the loop with the condition already popped.
+        for (int breakJump : loop.breakJumps){
+            patchJump(breakJump, null);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt){
+        if (loops.isEmpty()){
+            throw error(null, "Can't use 'break' outside of a loop.");
+        }
+        loops.get(loops.size() - 1).breakJumps.add(emitJump(JUMP, null));
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt){
+        VMFunction enclosingFunction = function;
+        List<Scope> enclosingScopes = scopes;
+        List<Loop> enclosingLoops = loops;
+        int enclosingStackDepth = stackDepth;
+
+        function = new VMFunction(stmt.name.lexeme, stmt.params.size());
+        scopes = new ArrayList<>();
+        loops = new ArrayList<>();
+        stackDepth = 0;
+
+        beginScope(stmt.slotCount);
+        for (Stmt statement : stmt.body){
+            compile(statement);
+        }
+        emit(NIL, null);
+        emit(RETURN, null);
+        VMFunction compiled = function;
+
+        function = enclosingFunction;
+        scopes = enclosingScopes;
+        loops = enclosingLoops;
+        stackDepth = enclosingStackDepth;
+
+        emitConstant(compiled, stmt.name);
+        if (stmt.memo) emit(MEMO, stmt.name);
+        defineVariable(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt){
+        if (stmt.value instanceof Expr.call){
+            // Followed by RETURN for a callee TAIL_CALL can't replace the frame with, a native say.
+            Expr.call call = (Expr.call) stmt.value;
+            compile(call.callee);
+            for (Expr argument : call.Arguments){
+                compile(argument);
+            }
+            emit(TAIL_CALL, call.paren);
+            emitByte(call.Arguments.size(), call.paren);
+            adjustStack(-call.Arguments.size());
+        } else if (stmt.value != null){
+            compile(stmt.value);
+        } else {
+            emit(NIL, stmt.keyword);
+        }
+        emit(RETURN, stmt.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr){
+        if (expr.value == null){
+            emit(NIL, null);
+        } else if (expr.value.equals(true)){
+            emit(TRUE, null);
+        } else if (expr.value.equals(false)){
+            emit(FALSE, null);
+        } else {
+            emitConstant(expr.value, null);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr){
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr){
+        if (expr.depth < 0){
+            emit(GET_GLOBAL, expr.name);
+            emitShort(makeConstant(new VM.GlobalSite(expr.name), expr.name), expr.name);
+        } else {
+            emit(GET_LOCAL, expr.name);
+            emitByte(localSlot(expr.depth, expr.slot), expr.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr){
+        compile(expr.Value);
+        if (expr.depth < 0){
+            emit(SET_GLOBAL, expr.name);
+            emitShort(makeConstant(new VM.GlobalSite(expr.name), expr.name), expr.name);
+        } else {
+            emit(SET_LOCAL, expr.name);
+            emitByte(localSlot(expr.depth, expr.slot), expr.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr){
+        compile(expr.left);
+        compile(expr.right);
+
+        Token operator = expr.operator;
+        switch (operator.type){
+            case EQUAL_EQUAL:   emit(EQUAL, operator); break;
+            case BANG_EQUAL:    emit(NOT_EQUAL, operator); break;
+            case GREATER:       emit(GREATER, operator); break;
+            case GREATER_EQUAL: emit(GREATER_EQUAL, operator); break;
+            case LESS:          emit(LESS, operator); break;
+            case LESS_EQUAL:    emit(LESS_EQUAL, operator); break;
+            case PLUS:          emit(ADD, operator); break;
+            case MINUS:         emit(SUBTRACT, operator); break;
+            case STAR:          emit(MULTIPLY, operator); break;
+            case SLASH:         emit(DIVIDE, operator); break;
+            default:
+                throw error(operator, "Unknown binary operator.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr){
+        compile(expr.right);
+        switch (expr.operator.type){
+            case MINUS: emit(NEGATE, expr.operator); break;
+            case BANG:  emit(NOT, expr.operator); break;
+            default:
+                throw error(expr.operator, "Unknown unary operator.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr){
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR){
+            int elseJump = emitJump(JUMP_IF_FALSE, expr.operator);
+            int endJump = emitJump(JUMP, expr.operator);
+            patchJump(elseJump, expr.operator);
+            emit(POP, expr.operator);
+            compile(expr.right);
+            patchJump(endJump, expr.operator);
+        } else {
+            int endJump = emitJump(JUMP_IF_FALSE, expr.operator);
+            emit(POP, expr.operator);
+            compile(expr.right);
+            patchJump(endJump, expr.operator);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitcallExpr(Expr.call expr){
+        compile(expr.callee);
+        for (Expr argument : expr.Arguments){
+            compile(argument);
+        }
+        emit(CALL, expr.paren);
+        emitByte(expr.Arguments.size(), expr.paren);
+        // Callee and arguments are replaced by the result.
+        adjustStack(-expr.Arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitSpawnExpr(Expr.Spawn expr){
+        Expr.call call = expr.call;
+        compile(call.callee);
+        for (Expr argument : call.Arguments){
+            compile(argument);
+        }
+        emit(SPAWN, call.paren);
+        emitByte(call.Arguments.size(), call.paren);
+        // Callee and arguments are replaced by the task.
+        adjustStack(-call.Arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        for (Expr element : expr.elements){
+            compile(element);
+        }
+        emit(ARRAY, expr.bracket);
+        emitShort(expr.elements.size(), expr.bracket);
+        // Elements are replaced by the array.
+        adjustStack(1 - expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr){
+        compile(expr.object);
+        compile(expr.index);
+        emit(GET_INDEX, expr.bracket);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexSetExpr(Expr.IndexSet expr){
+        compile(expr.object);
+        compile(expr.index);
+        compile(expr.value);
+        emit(SET_INDEX, expr.bracket);
+        return null;
+    }
+}
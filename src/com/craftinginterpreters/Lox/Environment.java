@@ -1,7 +1,12 @@
 package com.craftinginterpreters.Lox;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
 
 /*
 *  Q: Environement class get api is by Token, and define api is by String, why? GET api
@@ -9,26 +14,135 @@ import java.util.HashMap;
 *  A: To be able to define many native functions in global scope with values being a callable object.
 * */
 
+/*
+*  Locals are addressed by (depth, slot) pairs computed by the Resolver and live in a fixed size
+*  Object[] sized by the Resolver, so a block or call frame is a single small allocation.
+*  Only the global environment is addressed by name, since top level code and natives can define
+*  globals at any time. Its Bindings are kept in a map by name, only the globals defined in this
+*  environment take room in it.
+*
+*  Every global lives in a Binding cell. Variable and Assign nodes cache the cell the first time they
+*  find it (an inline cache), after that reading a global is a field load instead of hashing the name.
+*
+*  Q: What invalidates a cached Binding?
+*  A: Nothing has to. Re-defining a global ('var a' twice at top level, or 'fun f' twice) stores into
+*     the existing cell instead of replacing it, and globals are never removed. A cache only has to
+*     check that it belongs to this environment, the same AST can run against different globals.
+*
+*  Q: What may spawned tasks (LoxTask) assume about a global they share?
+*  A: Each read or write of one global is atomic, and a task reading a value another task wrote sees
+*     all of it: Binding.set is a release store and get an acquire load. Those are plain moves on
+*     x86, where a volatile store would put a full fence in every assignment of a global. A new
+*     global's Binding is published through the ConcurrentHashMap, a lookup never sees it half made.
+*     Nothing more: 'n = n + 1' from two tasks can lose an update, tasks which have to agree on more
+*     than one value pass it over a LoxChannel instead.
+*
+*     A cache can find a Binding another task just created before its first value shows, it then reads
+*     null and falls back to get, which looks the Binding up again through values.
+* */
+
 class Environment{
-    private final Map<String,Object> values = new HashMap<> ();
+    static final class Binding {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Binding.class, "value", Object.class);
+            } catch (ReflectiveOperationException e){
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final Environment owner;
+        private Object value;
+
+        Binding(Environment owner, Object value){
+            this.owner = owner;
+            this.value = value;
+        }
+
+        Object get(){
+            return VALUE.getAcquire(this);
+        }
+
+        void set(Object value){
+            VALUE.setRelease(this, value);
+        }
+    }
+
+    // What only the global environment has. Locals, which are made far more often, keep one null field.
+    private static final class Globals {
+        // Lexemes are interned per scan, a lookup with another scan's String hashes it (Strings cache
+        // their hash) and compares it once, then the node caches the Binding.
+        final ConcurrentHashMap<String, Binding> bindings = new ConcurrentHashMap<>();
+        // Tasks spawned by runs on these globals which failed, see LoxTask.
+        final Queue<LoxTask> failedTasks = new ConcurrentLinkedQueue<>();
+        // Number of the current run. Runs on one globals come one after the other (see LoxContext),
+        // only endRun changes it, between two of them.
+        int run = 0;
+    }
+
+    // Null for locals.
+    private final Globals globals;
+    private final Object[] slots;
     final Environment enclosing;
 
+    private static final Object[] NO_SLOTS = new Object[0];
+
     Environment(){
         enclosing = null;
+        globals = new Globals();
+        slots = NO_SLOTS;
     }
 
-    Environment(Environment enclosing){
+    Environment(Environment enclosing, int slotCount){
         this.enclosing  = enclosing;
+        globals = null;
+        slots = slotCount == 0 ? NO_SLOTS : new Object[slotCount];
     }
 
+    // define, get, assign, bindingOf, failedTasks and the runs are only valid on the global environment.
     void define(String name, Object value){
-        values.put(name,value);
+        Binding binding = globals.bindings.get(name);
+        if (binding == null){
+            binding = globals.bindings.putIfAbsent(name, new Binding(this, value));
+            if (binding == null) return;
+        }
+        binding.set(value);
+    }
+
+    // Returns null when the global isn't defined (yet).
+    Binding bindingOf(Token name){
+        return globals.bindings.get(name.lexeme);
+    }
+
+    Binding bindingOf(String name){
+        return globals.bindings.get(name);
+    }
+
+    // Every global's name and value, e.g. to hand them back to an embedder.
+    void forEachGlobal(BiConsumer<String, Object> action){
+        globals.bindings.forEach((name, binding) -> action.accept(name, binding.get()));
+    }
+
+    Queue<LoxTask> failedTasks(){
+        return globals.failedTasks;
+    }
+
+    int run(){
+        return globals.run;
+    }
+
+    // Returns the number of the run which ends, the next one gets the number after it.
+    int endRun(){
+        return globals.run++;
     }
 
     Object get(Token name){
         //Token should be  an identifier
-        if (values.containsKey(name.lexeme)){
-            Object value = values.get(name.lexeme);
+        Binding binding = bindingOf(name);
+        if (binding != null){
+            Object value = binding.get();
             if (value  == null) {
                 throw new RuntimeError(name,
                         "[RuntimeError] Uninitialized variable '"+ name.lexeme+"'.");
@@ -38,26 +152,50 @@ class Environment{
 
         }
 
-        if (null != enclosing){
-            return enclosing.get(name);
-        }
         throw new RuntimeError(name,
                 "[RuntimeError] Undefined variable name '" + name.lexeme + "'.");
     }
 
     void assign(Token name, Object value){
-        if (values.containsKey(name.lexeme)){
-            values.put(name.lexeme, value);
+        Binding binding = bindingOf(name);
+        if (binding != null){
+            binding.set(value);
             return;
         }
 
-        if (null != enclosing){
-            enclosing.assign(name, value);
-            return;
-        }
         throw new RuntimeError(name,
                 "[Assign] Undefined variable '" + name.lexeme + "'.");
     }
 
+    // Back to uninitialized, for a tail call that reuses the frame.
+    void clearSlots(){
+        Arrays.fill(slots, null);
+    }
+
+    void defineAt(int slot, Object value){
+        slots[slot] = value;
+    }
+
+    Object getAt(int depth, int slot, Token name){
+        Object value = ancestor(depth).slots[slot];
+        if (value == null){
+            throw new RuntimeError(name,
+                    "[RuntimeError] Uninitialized variable '"+ name.lexeme+"'.");
+        }
+        return value;
+    }
+
+    void assignAt(int depth, int slot, Object value){
+        ancestor(depth).slots[slot] = value;
+    }
+
+    private Environment ancestor(int depth){
+        Environment environment = this;
+        for (int i = 0; i < depth; i++){
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
+
 
 }
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  Where Scanner, Parser and Interpreter send the errors they find. Lox.CONSOLE prints them to stderr
+*  and sets the static flags jlox's exit status comes from, LoxProgram and LoxContext collect them per
+*  compilation and per execution, so scripts compiled or run at the same time don't share them.
+* */
+
+interface ErrorReporter {
+    // A compile error, where is "" or the offending token as " at ...".
+    void error(int line, String where, String message);
+
+    void runtimeError(RuntimeError error);
+
+    // Parser's notes on recovering from an error, only jlox prints them.
+    default void note(String message){
+    }
+
+    default void error(int line, String message){
+        error(line, "", message);
+    }
+
+    default void error(Token token, String message){
+        if (token.type == TokenType.EOF){
+            error(token.line, " at end ", message);
+        } else {
+            error(token.line, " at "+ token.lexeme+"'", message);
+        }
+    }
+
+    // The text jlox prints for a compile error.
+    static String format(int line, String where, String message){
+        return "[line " + line + "] Error" + where +  ": " +  message;
+    }
+}
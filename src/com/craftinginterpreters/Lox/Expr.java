@@ -12,6 +12,10 @@ abstract class Expr {
     R visitAssignExpr(Assign expr);
     R visitLogicalExpr(Logical expr);
     R visitcallExpr(call expr);
+    R visitSpawnExpr(Spawn expr);
+    R visitArrayLiteralExpr(ArrayLiteral expr);
+    R visitIndexExpr(Index expr);
+    R visitIndexSetExpr(IndexSet expr);
  }
 static  class Binary extends Expr {
   Binary ( Expr left, Token operator, Expr right  ) {
@@ -28,6 +32,7 @@ static  class Binary extends Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    int state = 0;
 } 
 static  class Grouping extends Expr {
   Grouping ( Expr expression  ) {
@@ -54,6 +59,7 @@ static  class Unary extends Expr {
 
     final Token operator;
     final Expr right;
+    int state = 0;
 } 
 static  class Literal extends Expr {
   Literal ( Object value  ) {
@@ -78,6 +84,9 @@ static  class Variable extends Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot = -1;
+    Environment.Binding binding = null;
 } 
 static  class Assign extends Expr {
   Assign ( Token name, Expr Value  ) {
@@ -92,6 +101,9 @@ static  class Assign extends Expr {
 
     final Token name;
     final Expr Value;
+    int depth = -1;
+    int slot = -1;
+    Environment.Binding binding = null;
 } 
 static  class Logical extends Expr {
   Logical ( Token operator, Expr left, Expr right  ) {
@@ -125,6 +137,68 @@ static  class call extends Expr {
     final Token paren;
     final List<Expr> Arguments;
 } 
+static  class Spawn extends Expr {
+  Spawn ( Token keyword, Expr.call call  ) {
+    this.keyword = keyword;
+    this.call = call;
+}
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitSpawnExpr(this);
+    }
+
+    final Token keyword;
+    final Expr.call call;
+} 
+static  class ArrayLiteral extends Expr {
+  ArrayLiteral ( Token bracket, List<Expr> elements  ) {
+    this.bracket = bracket;
+    this.elements = elements;
+}
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitArrayLiteralExpr(this);
+    }
+
+    final Token bracket;
+    final List<Expr> elements;
+} 
+static  class Index extends Expr {
+  Index ( Expr object, Token bracket, Expr index  ) {
+    this.object = object;
+    this.bracket = bracket;
+    this.index = index;
+}
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitIndexExpr(this);
+    }
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+} 
+static  class IndexSet extends Expr {
+  IndexSet ( Expr object, Token bracket, Expr index, Expr value  ) {
+    this.object = object;
+    this.bracket = bracket;
+    this.index = index;
+    this.value = value;
+}
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitIndexSetExpr(this);
+    }
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
+} 
 
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -1,31 +1,142 @@
 package com.craftinginterpreters.Lox;
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.function.Function;
 
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
-    final Environment globals = new Environment();
-    private Environment environment =  globals;
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object>{
+    final Environment globals;
+    private Environment environment;
+    // Compiles hot SLoxFunctions to JVM bytecode, null when the JIT tier is off.
+    JitCompiler jit;
+    // Samples the Lox call stack, null unless --profile.
+    Profiler profiler;
+    // Where print writes and runtime errors go, a LoxContext gives every execution its own.
+    PrintWriter out = STDOUT;
+    ErrorReporter reporter = Lox.CONSOLE;
 
-    void interpret (List<Stmt> statements){
+    static final PrintWriter STDOUT = new PrintWriter(System.out, true);
+
+    /*
+    *  Executing a statement returns its completion instead of throwing for break and return:
+    *      null       : completed normally
+    *      BREAK      : a break is leaving the innermost loop
+    *      NIL_RETURN : 'return;' or 'return nil;'
+    *      any other  : the value being returned
+    *  Blocks stop at the first abnormal completion and pass it up, visitWhileStmt consumes BREAK and
+    *  SLoxFunction.call consumes the rest.
+    *
+    *  Q: Why not keep throwing?
+    *  A: A throw per break or return is far slower than returning a value, even without a stack trace.
+    * */
+    static final Object BREAK = new Object();
+    static final Object NIL_RETURN = new Object();
+
+    // Returns the value of a return outside of any function, which ends the program, else null.
+    // Reports the errors of tasks the run spawned and didn't join at the end, see LoxTask.
+    Object interpret (List<Stmt> statements){
         try{
             for (Stmt statement: statements){
-                execute(statement);
+                Object completion = execute(statement);
+                if (completion instanceof TailCall){
+                    TailCall tailCall = (TailCall) completion;
+                    completion = tailCall.function.call(this, tailCall.arguments);
+                    if (completion == null) completion = NIL_RETURN;
+                }
+                if (completion == BREAK || completion == NIL_RETURN) return null;
+                if (completion != null) return completion;
             }
         } catch (RuntimeError error){
-            Lox.runtimeError(error);
+            reporter.runtimeError(error);
+        } finally {
+            LoxTask.reportFailures(globals);
         }
+        return null;
     }
 
     Interpreter() {
-        globals.define("clock", new SLoxCallable(){
+        globals = new Environment();
+        environment = globals;
+        defineNatives(globals);
+    }
+
+    // Runs a spawned task: shares the globals and where output and errors go, everything else is its own.
+    // No profiler, it samples the stack of one thread.
+    Interpreter(Interpreter spawner) {
+        globals = spawner.globals;
+        environment = globals;
+        jit = spawner.jit;
+        out = spawner.out;
+        reporter = spawner.reporter;
+    }
+
+    // A spawned call runs on an interpreter of the spawner's kind.
+    Interpreter forTask(){
+        return new Interpreter(this);
+    }
+
+    // Natives don't use the interpreter they are called with, so other engines share them.
+    static void defineNatives(Environment globals) {
+        defineNative(globals, "clock", 0, arguments -> (double)System.currentTimeMillis()/1000);
+
+        // Tasks and channels, see LoxTask and LoxChannel.
+        defineNative(globals, "join", 1, arguments -> {
+            if (!(arguments.get(0) instanceof LoxTask)) throw new NativeError("join expects a task.");
+            return ((LoxTask) arguments.get(0)).join();
+        });
+        defineNative(globals, "channel", 1, arguments -> {
+            Object capacity = arguments.get(0);
+            if (!(capacity instanceof Double) || (double) capacity < 1
+                    || (double) capacity > LoxChannel.MAX_CAPACITY || (double) capacity % 1 != 0){
+                throw new NativeError("Channel capacity must be a whole number from 1 to "
+                        + LoxChannel.MAX_CAPACITY + ".");
+            }
+            return new LoxChannel((int) (double) capacity);
+        });
+        defineNative(globals, "send", 2, arguments -> {
+            channel(arguments.get(0)).send(arguments.get(1));
+            return null;
+        });
+        defineNative(globals, "receive", 1, arguments -> channel(arguments.get(0)).receive());
+        defineNative(globals, "close", 1, arguments -> {
+            channel(arguments.get(0)).close();
+            return null;
+        });
+
+        // Arrays and maps, see LoxArray and LoxMap.
+        defineNative(globals, "len", 1, arguments -> {
+            Object value = arguments.get(0);
+            if (value instanceof LoxArray) return (double) ((LoxArray) value).length();
+            if (value instanceof LoxMap) return (double) ((LoxMap) value).length();
+            throw new NativeError("Expected an array or a map.");
+        });
+        defineNative(globals, "push", 2, arguments -> {
+            array(arguments.get(0)).push(arguments.get(1));
+            return null;
+        });
+        defineNative(globals, "map", 0, arguments -> new LoxMap());
+        defineNative(globals, "has", 2, arguments -> map(arguments.get(0)).has(arguments.get(1)));
+        defineNative(globals, "remove", 2, arguments -> map(arguments.get(0)).remove(arguments.get(1)));
+        defineNative(globals, "keys", 1, arguments -> map(arguments.get(0)).keys());
+
+        // Cache counters of a memo function, see MemoFunction.
+        defineNative(globals, "memoStats", 1, arguments -> {
+            if (!(arguments.get(0) instanceof MemoFunction)) throw new NativeError("Expected a memo function.");
+            return ((MemoFunction) arguments.get(0)).stats();
+        });
+    }
+
+    private static void defineNative(Environment globals, String name, int arity,
+                                     Function<List<Object>, Object> body){
+        globals.define(name, new SLoxCallable(){
             @Override
-            public int arity(){return 0;}
+            public int arity(){return arity;}
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments) {
-                return  (double)System.currentTimeMillis()/1000;
+                return body.apply(arguments);
             }
 
             @Override
@@ -34,8 +145,38 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             }
         });
     }
-    private void execute(Stmt statement){
-        statement.accept(this);
+
+    private static LoxChannel channel(Object value){
+        if (value instanceof LoxChannel) return (LoxChannel) value;
+        throw new NativeError("Expected a channel.");
+    }
+
+    private static LoxArray array(Object value){
+        if (value instanceof LoxArray) return (LoxArray) value;
+        throw new NativeError("Expected an array.");
+    }
+
+    private static LoxMap map(Object value){
+        if (value instanceof LoxMap) return (LoxMap) value;
+        throw new NativeError("Expected a map.");
+    }
+
+    // a[i] and m[key], every engine's index operations.
+    static Object index(Token bracket, Object object, Object index){
+        if (object instanceof LoxArray) return ((LoxArray) object).get(bracket, index);
+        if (object instanceof LoxMap) return ((LoxMap) object).get(bracket, index);
+        throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+    }
+
+    static Object setIndex(Token bracket, Object object, Object index, Object value){
+        if (object instanceof LoxArray) return ((LoxArray) object).set(bracket, index, value);
+        if (object instanceof LoxMap) return ((LoxMap) object).set(bracket, index, value);
+        throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+    }
+
+    private Object execute(Stmt statement){
+        if (profiler != null) profiler.at(statement.line);
+        return statement.accept(this);
     }
 
     @Override
@@ -51,7 +192,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     @Override
     public Object visitAssignExpr(Expr.Assign expr){
         Object value = evaluate(expr.Value);
-        environment.assign(expr.name, value);
+        if (expr.depth < 0){
+            assignGlobal(expr, value);
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
@@ -61,15 +206,34 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     */
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt){
-        executeBlockStmt(stmt.statements, new Environment(environment));
-        return  null;
+    public Object visitBlockStmt(Stmt.Block stmt){
+        return executeScope(stmt);
+    }
+
+    /*
+    * Resolver sized the block's frame, a block which declares nothing runs in the current environment
+    * instead of allocating an empty one.
+    */
+    private Object executeScope(Stmt.Block block){
+        if (block.slotCount == 0){
+            for (Stmt statement: block.statements){
+                Object completion = execute(statement);
+                if (completion != null) return completion;
+            }
+            return null;
+        }
+        return executeBlockStmt(block.statements, new Environment(environment, block.slotCount));
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt){
-        SLoxFunction sloxFunction = new SLoxFunction(stmt);
-        environment.define(stmt.name.lexeme, sloxFunction);
+    public Object visitFunctionStmt(Stmt.Function stmt){
+        SLoxCallable function = new SLoxFunction(stmt);
+        if (stmt.memo) function = new MemoFunction(function);
+        if (stmt.slot < 0){
+            globals.define(stmt.name.lexeme, function);
+        } else {
+            environment.defineAt(stmt.slot, function);
+        }
         return null;
     }
 
@@ -85,24 +249,26 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     * */
 
     @Override
-    public Void visitIfStmt(Stmt.If ifStmt){
+    public Object visitIfStmt(Stmt.If ifStmt){
           Object value  = evaluate(ifStmt.expr);
           if (isTruthy(value)){
-              executeBlockStmt(ifStmt.ifBlock.statements, new Environment(environment));
+              return executeScope(ifStmt.ifBlock);
           } else if (ifStmt.elseBlock != null){
-              executeBlockStmt(ifStmt.elseBlock.statements, new Environment(environment));
+              return executeScope(ifStmt.elseBlock);
           }
           return null;
     }
 
-   public void executeBlockStmt(List<Stmt> stmt, Environment environment){
+   public Object executeBlockStmt(List<Stmt> stmt, Environment environment){
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement: stmt){
-                execute(statement);
+                Object completion = execute(statement);
+                if (completion != null) return completion;
             }
+            return null;
         } finally{
             this.environment = previous;
         }
@@ -110,12 +276,51 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt){
+    public Object visitReturnStmt(Stmt.Return stmt){
         Object returnValue = null;
-        if (stmt.value != null){
+        if (stmt.value instanceof Expr.call){
+            returnValue = tailCall((Expr.call) stmt.value);
+        } else if (stmt.value != null){
             returnValue  = evaluate(stmt.value);
         }
-        throw new Return(returnValue);
+        return returnValue == null ? NIL_RETURN : returnValue;
+    }
+
+    /*
+    *  'return f(...)' is a tail call: callee and arguments are evaluated here, but the call itself is
+    *  left to SLoxFunction.call, which runs it in a loop after this frame has been unwound. Recursion in
+    *  tail position then takes constant Java stack.
+    *
+    *  Q: Why only for SLoxFunctions?
+    *  A: Natives don't nest Java frames of the interpreter, they are simply called.
+    * */
+    private Object tailCall(Expr.call expr){
+        Object callee = evaluate(expr.callee);
+
+        List<Object> argumentValues = new ArrayList<>();
+        for(Expr argument: expr.Arguments){
+            argumentValues.add(evaluate(argument));
+        }
+
+        return tailCall(callee, argumentValues, expr.paren);
+    }
+
+    Object tailCall(Object callee, List<Object> argumentValues, Token paren){
+        if (callee instanceof SLoxFunction && argumentValues.size() == ((SLoxFunction) callee).arity()){
+            return new TailCall((SLoxFunction) callee, argumentValues);
+        }
+        return call(callee, argumentValues, paren);
+    }
+
+    // A pending call returned from a function body, see tailCall.
+    static final class TailCall {
+        final SLoxFunction function;
+        final List<Object> arguments;
+
+        TailCall(SLoxFunction function, List<Object> arguments){
+            this.function = function;
+            this.arguments = arguments;
+        }
     }
 
     @Override
@@ -123,12 +328,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         Object leftValue =  evaluate(expr.left);
         Object rightValue = evaluate(expr.right);
 
-        switch(expr.operator.type){
+        return binary(expr.operator, leftValue, rightValue);
+    }
+
+    /*
+    * Semantics of the binary operators live here, outside of the visitor, so that every execution
+    * engine (tree walker, bytecode VM) agrees on them, including the runtime errors.
+    */
+    static Object binary(Token operator, Object leftValue, Object rightValue){
+        switch(operator.type){
             case MINUS:
-                checkNumberOperand(expr.operator, leftValue,  rightValue);
+                checkNumberOperand(operator, leftValue,  rightValue);
                 return (double)leftValue - (double)rightValue;
             case SLASH:
-                Token operator = expr.operator;
                 if (leftValue instanceof Double && rightValue instanceof Double) {
                     Double rightSlash = (double) rightValue;
                     if (rightSlash.intValue() == 0) {
@@ -143,73 +355,60 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
                 if (leftValue instanceof Double && rightValue instanceof Double)
                 return (double)leftValue * (double)rightValue;
 
-                int rep;
-                StringBuilder value = new StringBuilder();
-                StringBuilder attach = new StringBuilder();
-                if (leftValue instanceof String && rightValue instanceof Double) {
-                    Double repD =  (double) rightValue;
-                    rep = repD.intValue();
-                    value.append(leftValue.toString());
-                    attach.append(leftValue.toString());
+                LoxString repeated;
+                if (isString(leftValue) && rightValue instanceof Double) {
+                    repeated = LoxString.repeat(leftValue, ((Double) rightValue).intValue());
                 }
-                else if (rightValue instanceof  String && leftValue instanceof Double) {
-                    Double repD = (double)leftValue;
-                    rep = repD.intValue();
-                    value.append(rightValue.toString());
-                    attach.append(rightValue.toString());
+                else if (isString(rightValue) && leftValue instanceof Double) {
+                    repeated = LoxString.repeat(rightValue, ((Double) leftValue).intValue());
                 }
                 else{
-                    throw new RuntimeError(expr.operator,
+                    throw new RuntimeError(operator,
                             "Does not match number*number or number*string rule");
                 }
-                for (int i=1; i<rep; i++){
-                    value.append(attach);
-                }
-                return value;
+                return checkLength(operator, repeated);
             case PLUS:
                 if (leftValue instanceof Double && rightValue instanceof Double){
                     return  (double)leftValue + (double)rightValue;
                 }
 
-                if (leftValue instanceof String &&  rightValue instanceof String){
-                    return (String)leftValue + (String)rightValue;
+                if (isString(leftValue) && isString(rightValue)){
+                    return checkLength(operator, LoxString.concat(leftValue, rightValue));
                 }
                 else{
-                    StringBuilder addResult = new StringBuilder();
+                    LoxString addResult;
                     if (leftValue instanceof Double){
                         String leftAdd = leftValue.toString();
                         leftAdd = leftAdd.substring(0,leftAdd.length()-2);
-                        addResult.append(leftAdd);
-                        addResult.append(rightValue.toString());
+                        addResult = LoxString.concat(leftAdd, rightValue.toString());
                     }else{
                         String rightAdd = rightValue.toString();
                         rightAdd =  rightAdd.substring(0,rightAdd.length()-2);
-                        addResult.append(leftValue.toString());
-                        addResult.append(rightAdd);
+                        addResult = LoxString.concat(leftValue.toString(), rightAdd);
                     }
-                    return addResult;
+                    return checkLength(operator, addResult);
                 }
             case GREATER:
                 if (leftValue instanceof Double && rightValue instanceof Double)
                 return (double)leftValue > (double)rightValue;
 
-                if (leftValue instanceof String && rightValue instanceof String){
+                if (isString(leftValue) && isString(rightValue)){
                     int compareValue = leftValue.toString().compareToIgnoreCase(rightValue.toString());
                     if (compareValue > 0){
                         return true;
                     }
                     else return false;
                 }
-                throw new RuntimeError(expr.operator,
+                throw new RuntimeError(operator,
                         "operands must be string or number");
             case GREATER_EQUAL:
-                checkNumberOperand(expr.operator,  leftValue, rightValue);
+                checkNumberOperand(operator,  leftValue, rightValue);
                 return (double)leftValue >= (double)rightValue;
             case LESS:
-                checkNumberOperand(expr.operator,  leftValue, rightValue);
+                checkNumberOperand(operator,  leftValue, rightValue);
                 return (double)leftValue < (double)rightValue;
             case LESS_EQUAL:
-                checkNumberOperand(expr.operator, leftValue, rightValue);
+                checkNumberOperand(operator, leftValue, rightValue);
                 return (double)leftValue <= (double)rightValue;
             case BANG_EQUAL:
                 return !isEqual(leftValue, rightValue);
@@ -247,11 +446,42 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
     /*
     * It visitVariableExpr knows that the this.enivronment is the local scope with reference
-    * to parent scope.
+    * to parent scope. Resolver has already told us how many scopes to hop and which slot to read,
+    * unresolved names are globals.
     */
     @Override
     public Object visitVariableExpr(Expr.Variable expr){
-        return environment.get(expr.name);
+        if (expr.depth < 0){
+            return lookUpGlobal(expr);
+        }
+        return environment.getAt(expr.depth, expr.slot, expr.name);
+    }
+
+    // Writes through the Binding cached on the node, the name is only hashed on the first lookup.
+    void assignGlobal(Expr.Assign expr, Object value){
+        Environment.Binding binding = expr.binding;
+        if (binding == null || binding.owner != globals){
+            binding = globals.bindingOf(expr.name);
+            // Undefined, let assign report it.
+            if (binding == null) globals.assign(expr.name, value);
+            expr.binding = binding;
+        }
+        binding.set(value);
+    }
+
+    // Reads through the Binding cached on the node, the name is only hashed on the first lookup.
+    Object lookUpGlobal(Expr.Variable expr){
+        Environment.Binding binding = expr.binding;
+        if (binding == null || binding.owner != globals){
+            binding = globals.bindingOf(expr.name);
+            // Undefined, let get report it.
+            if (binding == null) return globals.get(expr.name);
+            expr.binding = binding;
+        }
+        Object value = binding.get();
+        // Uninitialized, let get report it.
+        if (value == null) return globals.get(expr.name);
+        return value;
     }
 
     @Override
@@ -297,17 +527,79 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             argumentValues.add(evaluate(argument));
         }
 
+        return call(callee, argumentValues, expr.paren);
+    }
+
+    Object call(Object callee, List<Object> argumentValues, Token paren){
+        SLoxCallable function = callable(callee, argumentValues.size(), paren);
+        try {
+            return function.call(this, argumentValues);
+        } catch (NativeError error){
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+
+    static SLoxCallable callable(Object callee, int argumentCount, Token paren){
         if (!(callee instanceof SLoxCallable)) {
-            throw new RuntimeError(expr.paren,"only classes and function can be called");
+            throw new RuntimeError(paren,"only classes and function can be called");
         }
 
         SLoxCallable function = (SLoxCallable) callee;
 
-        if (argumentValues.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected arguments: " + function.arity() +
-                    ", recieved arguments: " + argumentValues.size());
+        if (argumentCount != function.arity()) {
+            throw new RuntimeError(paren, "Expected arguments: " + function.arity() +
+                    ", recieved arguments: " + argumentCount);
+        }
+        return function;
+    }
+
+    /*
+    * 'spawn f(args)' evaluates the callee and the arguments here, checks the call like a call, then
+    * makes it on a virtual thread with an Interpreter of its own: environment is per thread, globals
+    * are shared. The spawner gets a LoxTask right away.
+    * */
+    @Override
+    public Object visitSpawnExpr(Expr.Spawn expr){
+        Expr.call call = expr.call;
+        Object callee = evaluate(call.callee);
+
+        List<Object> argumentValues = new ArrayList<>();
+        for(Expr argument: call.Arguments){
+            argumentValues.add(evaluate(argument));
+        }
+
+        return spawn(callee, argumentValues, call.paren);
+    }
+
+    LoxTask spawn(Object callee, List<Object> argumentValues, Token paren){
+        callable(callee, argumentValues.size(), paren);
+        Interpreter task = forTask();
+        return LoxTask.start(() -> task.call(callee, argumentValues, paren), globals, reporter);
+    }
+
+    @Override
+    public Object visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        Object[] elements = new Object[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++){
+            elements[i] = evaluate(expr.elements.get(i));
         }
-        return function.call(this, argumentValues);
+        return LoxArray.of(elements);
+    }
+
+    // The array is evaluated before the index, and both before the value.
+    @Override
+    public Object visitIndexExpr(Expr.Index expr){
+        Object array = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        return index(expr.bracket, array, index);
+    }
+
+    @Override
+    public Object visitIndexSetExpr(Expr.IndexSet expr){
+        Object array = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        return setIndex(expr.bracket, array, index, value);
     }
 
     /*
@@ -318,7 +610,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
      */
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt){
+    public Object visitExpressionStmt(Stmt.Expression stmt){
             Object value = evaluate(stmt.expression);
             //System.out.println(Stringify(value));
 
@@ -326,48 +618,85 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt){
+    public Object visitPrintStmt(Stmt.Print stmt){
             Object value = evaluate(stmt.expression);
-            System.out.println(Stringify(value));
+            out.println(Stringify(value));
             return  null;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt){
+    public Object visitVarStmt(Stmt.Var stmt){
             Object value = null;
             if (stmt.initializer != null){
                 value = evaluate(stmt.initializer);
             }
 
-            environment.define(stmt.name.lexeme,  value);
+            if (stmt.slot < 0){
+                globals.define(stmt.name.lexeme, value);
+            } else {
+                environment.defineAt(stmt.slot, value);
+            }
             return null;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt){
-         try {
-             while (isTruthy(evaluate(stmt.condition))) {
-                 execute(stmt.body);
-             }
-         } catch (RuntimeBreak breakFromLoop){
-             return null;
-         }
+    public Object visitWhileStmt(Stmt.While stmt){
+        // 'firse (;;)' has no condition.
+        while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
+            Object completion = execute(stmt.body);
+            if (completion == BREAK) break;
+            if (completion != null) return completion;
+        }
+        return null;
+    }
+
+    // Bounds and the reduction's initial value are evaluated once, here, then see ParallelLoop.
+    @Override
+    public Object visitParallelStmt(Stmt.Parallel stmt){
+        Object start = evaluate(stmt.start);
+        long count = ParallelLoop.iterations(stmt, start, evaluate(stmt.end));
+        double first = (double) start;
+        Token operator = stmt.operator;
+        Object initial = operator != null ? evaluate(stmt.accumulator) : null;
+
+        Environment enclosing = environment;
+        Object reduced = ParallelLoop.run(count, operator, (from, to) -> {
+            Interpreter piece = forTask();
+            Environment scope = new Environment(enclosing, stmt.slotCount);
+            if (operator != null) scope.defineAt(1, ParallelLoop.identity(operator));
+            piece.environment = scope;
+            for (long i = from; i < to; i++){
+                scope.defineAt(0, first + i);
+                piece.execute(stmt.body);
+            }
+            return operator != null ? scope.getAt(0, 1, stmt.accumulator.name) : null;
+        });
+
+        if (operator != null){
+            Object result = ParallelLoop.combine(operator, initial, reduced);
+            Expr.Variable accumulator = stmt.accumulator;
+            if (accumulator.depth < 0){
+                globals.assign(accumulator.name, result);
+            } else {
+                environment.assignAt(accumulator.depth, accumulator.slot, result);
+            }
+        }
         return null;
     }
 
     @Override
-    public  Void visitBreakStmt(Stmt.Break stmt){
-        throw new RuntimeBreak("Just a break from loop");
+    public  Object visitBreakStmt(Stmt.Break stmt){
+        return BREAK;
     }
 
-    private void checkNumberOperand(Token operator, Object rightValue){
+    static void checkNumberOperand(Token operator, Object rightValue){
         if (rightValue instanceof Double) return;
         throw new RuntimeError(operator,
                 "operand must be a  number");
 
     }
 
-    private void checkNumberOperand(Token operator, Object leftValue, Object rightValue){
+    static void checkNumberOperand(Token operator, Object leftValue, Object rightValue){
         if (leftValue instanceof Double &&  rightValue instanceof Double){
             return;
         }
@@ -375,7 +704,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
                 "Operands  must be numbers");
     }
 
-    private boolean isTruthy(Object value){
+    static boolean isTruthy(Object value){
         //Can we cast this value to boolean // programming
         // do we want to  cast this value to boolean // design
 
@@ -385,18 +714,34 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         return true;
     }
 
-    private boolean isEqual(Object a, Object b){
+    static boolean isEqual(Object a, Object b){
         if (a==null && b==null) return  true;
         if (a==null) return false;
+        // A literal and a LoxString with the same text are the same string.
+        if (a instanceof LoxString || b instanceof LoxString){
+            return isString(a) && isString(b) && LoxString.of(a).equals(LoxString.of(b));
+        }
 
         return a.equals(b);
     }
 
-    private Object evaluate(Expr expr){
+    Object evaluate(Expr expr){
         return expr.accept(this);
     }
 
-    private String Stringify(Object value){
+    // Strings are literals (String) or results of + and * (LoxString).
+    static boolean isString(Object value){
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    private static LoxString checkLength(Token operator, LoxString result){
+        if (result == null){
+            throw new RuntimeError(operator, "String too long");
+        }
+        return result;
+    }
+
+    static String Stringify(Object value){
         if (value == null)  return "nil";
 
         if (value instanceof Double){
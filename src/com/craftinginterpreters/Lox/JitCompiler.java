@@ -0,0 +1,648 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  Second tier for SLoxFunction. Once a function has been called 'threshold' times, JitCompiler
+*  translates its body into a JVM class implementing JitFunction and defines it as a hidden class, so
+*  HotSpot can compile and inline it like any other Java code. Only the JDK is used: the class file is
+*  written by hand below.
+*
+*  Generated code keeps Lox values boxed and calls into JitRuntime for operators, globals and calls,
+*  locals live in JVM local variables laid out the same way the bytecode Compiler lays out a frame.
+*
+*  Anything the compiler doesn't support yet (nested function declarations, too large bodies) makes
+*  compile return null and the function stays with the tree walker. Every decision is written to the
+*  log when one is given (jlox --jit-log).
+*
+*  Q: Why class file version 49?
+*  A: Version 50+ needs a StackMapTable for every branch target. Version 49 is verified by type
+*     inference, so we don't have to compute stack map frames, and HotSpot still accepts it.
+* */
+
+class JitCompiler {
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    final int threshold;
+    private final PrintStream log;
+
+    JitCompiler(int threshold, PrintStream log){
+        this.threshold = threshold;
+        this.log = log;
+    }
+
+    // Returns null when the function has to stay interpreted.
+    JitFunction compile(Stmt.Function declaration, int callCount){
+        String name = declaration.name.lexeme;
+        try {
+            FunctionCompiler compiler = new FunctionCompiler(declaration);
+            byte[] classFile = compiler.compile();
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class));
+            JitFunction function = (JitFunction) constructor.invoke(compiler.constants.toArray());
+
+            log("compiled '" + name + "' after " + callCount + " calls, "
+                    + compiler.codeSize + " bytes of JVM bytecode");
+            return function;
+        } catch (Unsupported unsupported){
+            log("'" + name + "' stays interpreted: " + unsupported.getMessage());
+        } catch (Throwable error){
+            log("'" + name + "' stays interpreted: " + error);
+        }
+        return null;
+    }
+
+    private void log(String message){
+        if (log != null) log.println("[jit] " + message);
+    }
+
+    private static class Unsupported extends RuntimeException {
+        Unsupported(String message){
+            super(message, null, false, false);
+        }
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String RUNTIME = "com/craftinginterpreters/Lox/JitRuntime";
+    private static final String INTERPRETER = "Lcom/craftinginterpreters/Lox/Interpreter;";
+    private static final String INVOKE_DESCRIPTOR = "(" + INTERPRETER + "Ljava/util/List;)Ljava/lang/Object;";
+    private static final String BINARY_DESCRIPTOR =
+            "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+
+    // JVM local variables of invoke().
+    private static final int THIS = 0;
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int ARGUMENTS_LOCAL = 2;
+    private static final int CONSTANTS_LOCAL = 3;
+    private static final int FIRST_SLOT = 4;
+
+    // JVM opcodes used by the compiler.
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11;
+    private static final int ALOAD = 0x19, ASTORE = 0x3a, AALOAD = 0x32, AASTORE = 0x53;
+    private static final int POP = 0x57, DUP = 0x59;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7;
+    private static final int ARETURN = 0xb0, RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4, PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7, INVOKEINTERFACE = 0xb9, INVOKESTATIC = 0xb8;
+    private static final int ANEWARRAY = 0xbd;
+
+    /*
+    * Compiles one function. Writes the constant pool while generating invoke(), then assembles the
+    * class file around it.
+    * */
+    private static class FunctionCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final Stmt.Function declaration;
+        private final String className;
+
+        // Values the generated code loads from its constants array: tokens, literals, AST nodes.
+        final List<Object> constants = new ArrayList<>();
+        // invoke()'s bytecode, code[0, codeSize). Jumps are patched in place like in Chunk.
+        private byte[] code = new byte[256];
+        int codeSize = 0;
+
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private final Map<String, Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+
+        private int stackDepth = 0;
+        private int maxStack = 0;
+        private final List<int[]> scopes = new ArrayList<>();
+        private final List<List<Integer>> loops = new ArrayList<>();
+        private int frameSize = 0;
+
+        FunctionCompiler(Stmt.Function declaration){
+            this.declaration = declaration;
+            this.className = "com/craftinginterpreters/Lox/JitFunction$" + declaration.name.lexeme;
+        }
+
+        byte[] compile() throws IOException {
+            beginScope(declaration.slotCount);
+            int arity = declaration.params.size();
+
+            // Prologue: constants array and parameters into locals, every other slot to null.
+            emit(ALOAD, 1);
+            write(THIS);
+            emit(GETFIELD, 0);
+            writeShort(fieldRef(className, "k", "[Ljava/lang/Object;"));
+            emit(ASTORE, -1);
+            write(CONSTANTS_LOCAL);
+            for (int i = 0; i < frameSize; i++){
+                if (i < arity){
+                    emit(ALOAD, 1);
+                    write(ARGUMENTS_LOCAL);
+                    pushInt(i);
+                    invokeStatic("argument", "(Ljava/util/List;I)Ljava/lang/Object;", -1);
+                } else {
+                    emit(ACONST_NULL, 1);
+                }
+                store(i);
+            }
+
+            for (Stmt statement : declaration.body){
+                statement.accept(this);
+            }
+            emit(ACONST_NULL, 1);
+            emit(ARETURN, -1);
+
+            if (codeSize > Short.MAX_VALUE){
+                throw new Unsupported("body too large");
+            }
+            return classFile();
+        }
+
+        // Stack effect of every instruction is passed in, that is how max_stack is computed.
+        private void emit(int opcode, int stackEffect){
+            write(opcode);
+            stackDepth += stackEffect;
+            if (stackDepth > maxStack) maxStack = stackDepth;
+        }
+
+        private void write(int value){
+            if (codeSize == code.length) code = Arrays.copyOf(code, codeSize * 2);
+            code[codeSize++] = (byte) value;
+        }
+
+        private void writeShort(int value){
+            write((value >> 8) & 0xff);
+            write(value & 0xff);
+        }
+
+        private void pushInt(int value){
+            if (value <= 5){
+                emit(ICONST_0 + value, 1);
+            } else if (value <= Byte.MAX_VALUE){
+                emit(BIPUSH, 1);
+                write(value);
+            } else if (value <= Short.MAX_VALUE){
+                emit(SIPUSH, 1);
+                writeShort(value);
+            } else {
+                throw new Unsupported("too many constants");
+            }
+        }
+
+        private void loadConstant(Object value){
+            constants.add(value);
+            emit(ALOAD, 1);
+            write(CONSTANTS_LOCAL);
+            pushInt(constants.size() - 1);
+            emit(AALOAD, -1);
+        }
+
+        private void invokeStatic(String name, String descriptor, int stackEffect){
+            emit(INVOKESTATIC, stackEffect);
+            writeShort(methodRef(RUNTIME, name, descriptor));
+        }
+
+        private int local(int slot){
+            int local = FIRST_SLOT + slot;
+            if (local > 0xff) throw new Unsupported("too many local variables");
+            return local;
+        }
+
+        private void load(int slot){
+            emit(ALOAD, 1);
+            write(local(slot));
+        }
+
+        private void store(int slot){
+            emit(ASTORE, -1);
+            write(local(slot));
+        }
+
+        private int jump(int opcode, int stackEffect){
+            int position = codeSize;
+            emit(opcode, stackEffect);
+            writeShort(0);
+            return position;
+        }
+
+        private void patch(int position){
+            int offset = codeSize - position;
+            code[position + 1] = (byte) ((offset >> 8) & 0xff);
+            code[position + 2] = (byte) (offset & 0xff);
+        }
+
+        private void jumpBack(int target){
+            int position = codeSize;
+            emit(GOTO, 0);
+            writeShort(target - position);
+        }
+
+        // Same layout as the bytecode Compiler: each scope gets the slots after its enclosing scope's.
+        private void beginScope(int size){
+            int base = 0;
+            if (!scopes.isEmpty()){
+                int[] enclosing = scopes.get(scopes.size() - 1);
+                base = enclosing[0] + enclosing[1];
+            }
+            scopes.add(new int[]{base, size});
+            frameSize = Math.max(frameSize, base + size);
+        }
+
+        private int slot(int depth, int slot){
+            return scopes.get(scopes.size() - 1 - depth)[0] + slot;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt){
+            stmt.expression.accept(this);
+            emit(POP, -1);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt){
+            emit(ALOAD, 1);
+            write(INTERPRETER_LOCAL);
+            stmt.expression.accept(this);
+            invokeStatic("print", "(" + INTERPRETER + "Ljava/lang/Object;)V", -2);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt){
+            if (stmt.initializer != null){
+                stmt.initializer.accept(this);
+            } else {
+                emit(ACONST_NULL, 1);
+            }
+            store(slot(0, stmt.slot));
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt){
+            if (stmt.slotCount == 0){
+                for (Stmt statement : stmt.statements){
+                    statement.accept(this);
+                }
+                return null;
+            }
+
+            beginScope(stmt.slotCount);
+            // Fresh, uninitialized locals on every entry, as a new Environment would have.
+            for (int i = 0; i < stmt.slotCount; i++){
+                emit(ACONST_NULL, 1);
+                store(slot(0, i));
+            }
+            for (Stmt statement : stmt.statements){
+                statement.accept(this);
+            }
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt){
+            stmt.expr.accept(this);
+            invokeStatic("isTruthy", "(Ljava/lang/Object;)Z", 0);
+            int elseJump = jump(IFEQ, -1);
+            stmt.ifBlock.accept(this);
+            int endJump = jump(GOTO, 0);
+            patch(elseJump);
+            if (stmt.elseBlock != null){
+                stmt.elseBlock.accept(this);
+            }
+            patch(endJump);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt){
+            int loopStart = codeSize;
+            int exitJump = -1;
+            if (stmt.condition != null){
+                stmt.condition.accept(this);
+                invokeStatic("isTruthy", "(Ljava/lang/Object;)Z", 0);
+                exitJump = jump(IFEQ, -1);
+            }
+
+            loops.add(new ArrayList<>());
+            stmt.body.accept(this);
+            List<Integer> breakJumps = loops.remove(loops.size() - 1);
+
+            jumpBack(loopStart);
+            if (exitJump >= 0) patch(exitJump);
+            for (int breakJump : breakJumps){
+                patch(breakJump);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitParallelStmt(Stmt.Parallel stmt){
+            throw new Unsupported("parallel loop");
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt){
+            if (loops.isEmpty()) throw new Unsupported("break outside of a loop");
+            loops.get(loops.size() - 1).add(jump(GOTO, 0));
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt){
+            throw new Unsupported("nested function declarations are not supported");
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt){
+            if (stmt.value instanceof Expr.call){
+                call((Expr.call) stmt.value, "tailCall");
+            } else if (stmt.value != null){
+                stmt.value.accept(this);
+            } else {
+                emit(ACONST_NULL, 1);
+            }
+            emit(ARETURN, -1);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr){
+            if (expr.value == null){
+                emit(ACONST_NULL, 1);
+            } else {
+                loadConstant(expr.value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr){
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr){
+            if (expr.depth < 0){
+                emit(ALOAD, 1);
+                write(INTERPRETER_LOCAL);
+                loadConstant(expr);
+                invokeStatic("global", "(" + INTERPRETER + "Ljava/lang/Object;)Ljava/lang/Object;", -1);
+            } else {
+                load(slot(expr.depth, expr.slot));
+                loadConstant(expr.name);
+                invokeStatic("local", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", -1);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr){
+            if (expr.depth < 0){
+                emit(ALOAD, 1);
+                write(INTERPRETER_LOCAL);
+                loadConstant(expr);
+                expr.Value.accept(this);
+                invokeStatic("assignGlobal",
+                        "(" + INTERPRETER + "Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", -2);
+            } else {
+                expr.Value.accept(this);
+                emit(DUP, 1);
+                store(slot(expr.depth, expr.slot));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr){
+            expr.left.accept(this);
+            expr.right.accept(this);
+            loadConstant(expr.operator);
+
+            String helper;
+            switch (expr.operator.type){
+                case PLUS:          helper = "add"; break;
+                case MINUS:         helper = "subtract"; break;
+                case STAR:          helper = "multiply"; break;
+                case SLASH:         helper = "divide"; break;
+                case LESS:          helper = "less"; break;
+                case LESS_EQUAL:    helper = "lessEqual"; break;
+                case GREATER:       helper = "greater"; break;
+                case GREATER_EQUAL: helper = "greaterEqual"; break;
+                case EQUAL_EQUAL:   helper = "equal"; break;
+                case BANG_EQUAL:    helper = "notEqual"; break;
+                default:
+                    throw new Unsupported("operator " + expr.operator.lexeme);
+            }
+            invokeStatic(helper, BINARY_DESCRIPTOR, -2);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr){
+            expr.right.accept(this);
+            if (expr.operator.type == TokenType.MINUS){
+                loadConstant(expr.operator);
+                invokeStatic("negate", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", -1);
+            } else {
+                invokeStatic("not", "(Ljava/lang/Object;)Ljava/lang/Object;", 0);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr){
+            expr.left.accept(this);
+            emit(DUP, 1);
+            invokeStatic("isTruthy", "(Ljava/lang/Object;)Z", 0);
+            // 'or' is done when the left value is truthy, 'and' when it's falsy.
+            int endJump = jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, -1);
+            emit(POP, -1);
+            expr.right.accept(this);
+            patch(endJump);
+            return null;
+        }
+
+        @Override
+        public Void visitcallExpr(Expr.call expr){
+            call(expr, "call");
+            return null;
+        }
+
+        @Override
+        public Void visitSpawnExpr(Expr.Spawn expr){
+            call(expr.call, "spawn");
+            return null;
+        }
+
+        @Override
+        public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+            newArray(expr.elements);
+            invokeStatic("array", "([Ljava/lang/Object;)Ljava/lang/Object;", 0);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr){
+            expr.object.accept(this);
+            expr.index.accept(this);
+            loadConstant(expr.bracket);
+            invokeStatic("index", BINARY_DESCRIPTOR, -2);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexSetExpr(Expr.IndexSet expr){
+            expr.object.accept(this);
+            expr.index.accept(this);
+            expr.value.accept(this);
+            loadConstant(expr.bracket);
+            invokeStatic("setIndex",
+                    "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", -3);
+            return null;
+        }
+
+        private void call(Expr.call expr, String helper){
+            emit(ALOAD, 1);
+            write(INTERPRETER_LOCAL);
+            expr.callee.accept(this);
+            newArray(expr.Arguments);
+            loadConstant(expr.paren);
+            invokeStatic(helper,
+                    "(" + INTERPRETER + "Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;",
+                    -3);
+        }
+
+        // Leaves an Object[] holding the values of exprs on the stack.
+        private void newArray(List<Expr> exprs){
+            pushInt(exprs.size());
+            emit(ANEWARRAY, 0);
+            writeShort(classRef(OBJECT));
+            for (int i = 0; i < exprs.size(); i++){
+                emit(DUP, 1);
+                pushInt(i);
+                exprs.get(i).accept(this);
+                emit(AASTORE, -3);
+            }
+        }
+
+        private int constant(String key, int tag, int... entries) {
+            Integer index = poolIndex.get(key);
+            if (index != null) return index;
+            try {
+                poolOut.writeByte(tag);
+                for (int entry : entries){
+                    poolOut.writeShort(entry);
+                }
+            } catch (IOException e){
+                throw new IllegalStateException(e);
+            }
+            poolIndex.put(key, poolCount);
+            return poolCount++;
+        }
+
+        private int utf8(String value){
+            Integer index = poolIndex.get("U" + value);
+            if (index != null) return index;
+            try {
+                poolOut.writeByte(1);
+                poolOut.writeUTF(value);
+            } catch (IOException e){
+                throw new IllegalStateException(e);
+            }
+            poolIndex.put("U" + value, poolCount);
+            return poolCount++;
+        }
+
+        private int classRef(String name){
+            return constant("C" + name, 7, utf8(name));
+        }
+
+        private int nameAndType(String name, String descriptor){
+            return constant("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int methodRef(String owner, String name, String descriptor){
+            return constant("M" + owner + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int fieldRef(String owner, String name, String descriptor){
+            return constant("F" + owner + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private byte[] classFile() throws IOException {
+            int thisClass = classRef(className);
+            int superClass = classRef(OBJECT);
+            int interfaceClass = classRef("com/craftinginterpreters/Lox/JitFunction");
+            int field = fieldRef(className, "k", "[Ljava/lang/Object;");
+            int objectInit = methodRef(OBJECT, "<init>", "()V");
+            int codeName = utf8("Code");
+            int fieldName = utf8("k");
+            int fieldDescriptor = utf8("[Ljava/lang/Object;");
+            int initName = utf8("<init>");
+            int initDescriptor = utf8("([Ljava/lang/Object;)V");
+            int invokeName = utf8("invoke");
+            int invokeDescriptor = utf8(INVOKE_DESCRIPTOR);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+
+            out.writeShort(0x0010 | 0x0020);   // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+
+            out.writeShort(1);
+            out.writeShort(0x0002 | 0x0010);   // ACC_PRIVATE | ACC_FINAL
+            out.writeShort(fieldName);
+            out.writeShort(fieldDescriptor);
+            out.writeShort(0);
+
+            out.writeShort(2);
+
+            // <init>(Object[] k) { super(); this.k = k; }
+            byte[] init = {
+                    0x2a, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                    0x2a, 0x2b, (byte) PUTFIELD, (byte) (field >> 8), (byte) field,
+                    (byte) RETURN
+            };
+            writeMethod(out, 0x0001, initName, initDescriptor, codeName, 2, 2, init);
+            writeMethod(out, 0x0001, invokeName, invokeDescriptor, codeName,
+                    maxStack, FIRST_SLOT + frameSize, Arrays.copyOf(code, codeSize));
+
+            out.writeShort(0);
+            return bytes.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream out, int access, int name, int descriptor,
+                                        int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);   // exception table
+            out.writeShort(0);   // attributes
+        }
+    }
+}
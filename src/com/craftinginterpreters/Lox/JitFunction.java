@@ -0,0 +1,11 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.List;
+
+/*
+*  Implemented by the hidden classes JitCompiler generates, one per compiled SLoxFunction.
+* */
+
+interface JitFunction {
+    Object invoke(Interpreter interpreter, List<Object> arguments);
+}
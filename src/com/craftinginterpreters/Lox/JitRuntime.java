@@ -0,0 +1,135 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  Static helpers called from JVM bytecode generated by JitCompiler. Operands arrive as Object (the
+*  generated code keeps every Lox value boxed), tokens and AST nodes come from the compiled
+*  function's constant array. Every helper takes the fast path for numbers and otherwise defers to the
+*  Interpreter, so compiled code reports exactly the same runtime errors.
+* */
+
+final class JitRuntime {
+
+    private JitRuntime(){}
+
+    static Object argument(List<Object> arguments, int index){
+        return arguments.get(index);
+    }
+
+    static Object local(Object value, Object name){
+        if (value == null){
+            Token token = (Token) name;
+            throw new RuntimeError(token,
+                    "[RuntimeError] Uninitialized variable '"+ token.lexeme+"'.");
+        }
+        return value;
+    }
+
+    static Object global(Interpreter interpreter, Object variable){
+        return interpreter.lookUpGlobal((Expr.Variable) variable);
+    }
+
+    static Object assignGlobal(Interpreter interpreter, Object assign, Object value){
+        interpreter.assignGlobal((Expr.Assign) assign, value);
+        return value;
+    }
+
+    static boolean isTruthy(Object value){
+        return Interpreter.isTruthy(value);
+    }
+
+    static void print(Interpreter interpreter, Object value){
+        interpreter.out.println(Interpreter.Stringify(value));
+    }
+
+    static Object call(Interpreter interpreter, Object callee, Object[] arguments, Object paren){
+        return interpreter.call(callee, argumentList(arguments), (Token) paren);
+    }
+
+    // 'return f(...)', the TailCall it may return is run by SLoxFunction.call like the tree walker's.
+    static Object tailCall(Interpreter interpreter, Object callee, Object[] arguments, Object paren){
+        return interpreter.tailCall(callee, argumentList(arguments), (Token) paren);
+    }
+
+    static Object spawn(Interpreter interpreter, Object callee, Object[] arguments, Object paren){
+        return interpreter.spawn(callee, argumentList(arguments), (Token) paren);
+    }
+
+    static Object array(Object[] elements){
+        return LoxArray.of(elements);
+    }
+
+    static Object index(Object array, Object index, Object bracket){
+        return Interpreter.index((Token) bracket, array, index);
+    }
+
+    static Object setIndex(Object array, Object index, Object value, Object bracket){
+        return Interpreter.setIndex((Token) bracket, array, index, value);
+    }
+
+    private static List<Object> argumentList(Object[] arguments){
+        List<Object> argumentValues = new ArrayList<>(arguments.length);
+        for (Object argument : arguments){
+            argumentValues.add(argument);
+        }
+        return argumentValues;
+    }
+
+    static Object add(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a + (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object subtract(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a - (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object multiply(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a * (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object divide(Object a, Object b, Object operator){
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object less(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a < (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object lessEqual(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a <= (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object greater(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a > (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object greaterEqual(Object a, Object b, Object operator){
+        if (a instanceof Double && b instanceof Double) return (Double) a >= (Double) b;
+        return Interpreter.binary((Token) operator, a, b);
+    }
+
+    static Object equal(Object a, Object b, Object operator){
+        return Interpreter.isEqual(a, b);
+    }
+
+    static Object notEqual(Object a, Object b, Object operator){
+        return !Interpreter.isEqual(a, b);
+    }
+
+    static Object negate(Object value, Object operator){
+        Interpreter.checkNumberOperand((Token) operator, value);
+        return -(double) value;
+    }
+
+    static Object not(Object value){
+        return !Interpreter.isTruthy(value);
+    }
+}
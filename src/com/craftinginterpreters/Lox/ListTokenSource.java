@@ -0,0 +1,33 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.List;
+
+// Tokens already scanned into a list, ending with EOF.
+class ListTokenSource implements TokenSource {
+    private final List<Token> tokens;
+    private int current = 0;
+
+    ListTokenSource(List<Token> tokens){
+        this.tokens = tokens;
+    }
+
+    @Override
+    public TokenType peekType(){
+        return tokens.get(current).type;
+    }
+
+    @Override
+    public Token peek(){
+        return tokens.get(current);
+    }
+
+    @Override
+    public Token previous(){
+        return tokens.get(current - 1);
+    }
+
+    @Override
+    public void advance(){
+        if (peekType() != TokenType.EOF) current++;
+    }
+}
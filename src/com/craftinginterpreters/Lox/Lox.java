@@ -3,31 +3,161 @@ package com.craftinginterpreters.Lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.List;
 
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    private static Interpreter interpreter;
+    private static VM vm;
+    private static final Environment closureGlobals = new Environment();
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    // "tree" walks the AST with Interpreter, "specializing" with SpecializingInterpreter,
+    // "closure" compiles it to lambdas with ClosureCompiler, "vm" compiles it to bytecode for the VM.
+    private static String engine = "tree";
+    // "reader" decodes the script file through a Reader, "mmap" scans its bytes with ByteScanner,
+    // "buffer" reads it whole and scans it into a TokenBuffer.
+    private static String scannerMode = "reader";
+    // --jit turns on the JIT tier for the tree walking engines.
+    private static boolean jit = false;
+    private static int jitThreshold = JitCompiler.DEFAULT_THRESHOLD;
+    private static boolean jitLog = false;
+    // Compiled scripts are cached on disk unless --no-cache, see ScriptCache.
+    private static Path cacheDirectory = defaultCacheDirectory();
+    private static ScriptCache cache;
+    // --profile=FILE samples the tree walking engines and writes collapsed stacks to FILE.
+    private static Path profileOutput;
+    private static int profileInterval = Profiler.DEFAULT_INTERVAL_MILLIS;
 
     public  static void main (String [] args) throws IOException {
-    if (args.length > 1){
-        System.out.println("Usage: jlox [script]");
-        System.exit(64);
-    } else if (args.length == 1){
-      runFile(args[0]);
-    } else if (args.length ==  0){
+    String script = null;
+    for (String arg : args){
+        if (arg.startsWith("--engine=")){
+            engine = arg.substring("--engine=".length());
+            if (!engine.equals("tree") && !engine.equals("specializing")
+                    && !engine.equals("closure") && !engine.equals("vm")) usage();
+        } else if (arg.startsWith("--scanner=")){
+            scannerMode = arg.substring("--scanner=".length());
+            if (!scannerMode.equals("reader") && !scannerMode.equals("mmap")
+                    && !scannerMode.equals("buffer")) usage();
+        } else if (arg.equals("--jit")){
+            jit = true;
+        } else if (arg.startsWith("--jit-threshold=")){
+            try {
+                jitThreshold = Integer.parseInt(arg.substring("--jit-threshold=".length()));
+            } catch (NumberFormatException e){
+                usage();
+            }
+            if (jitThreshold < 1) usage();
+        } else if (arg.equals("--jit-log")){
+            jitLog = true;
+        } else if (arg.startsWith("--cache-dir=")){
+            cacheDirectory = Paths.get(arg.substring("--cache-dir=".length()));
+        } else if (arg.equals("--no-cache")){
+            cacheDirectory = null;
+        } else if (arg.startsWith("--profile=")){
+            profileOutput = Paths.get(arg.substring("--profile=".length()));
+        } else if (arg.startsWith("--profile-interval=")){
+            try {
+                profileInterval = Integer.parseInt(arg.substring("--profile-interval=".length()));
+            } catch (NumberFormatException e){
+                usage();
+            }
+            if (profileInterval < 1) usage();
+        } else if (script == null && !arg.startsWith("--")){
+            script = arg;
+        } else {
+            usage();
+        }
+    }
+
+    interpreter = engine.equals("specializing") ? new SpecializingInterpreter() : new Interpreter();
+    if (jit) interpreter.jit = new JitCompiler(jitThreshold, jitLog ? System.err : null);
+    vm = new VM();
+    Interpreter.defineNatives(closureGlobals);
+    if (cacheDirectory != null) cache = new ScriptCache(cacheDirectory);
+    // Only the tree walking engines keep the call stack the profiler samples.
+    if (profileOutput != null && (script == null || engine.equals("closure") || engine.equals("vm"))) usage();
+
+    if (script != null){
+      runFile(script);
+    } else {
       runPrompt();
     }
   }
 
+  private static void usage(){
+      System.out.println("Usage: jlox [--engine=tree|specializing|closure|vm] [--scanner=reader|mmap|buffer]"
+              + " [--jit [--jit-threshold=N] [--jit-log]] [--cache-dir=DIR | --no-cache]"
+              + " [--profile=FILE [--profile-interval=MS]] [script]");
+      System.exit(64);
+  }
+
+  private static Path defaultCacheDirectory(){
+      String cacheHome = System.getenv("XDG_CACHE_HOME");
+      Path base = cacheHome != null && !cacheHome.isEmpty()
+              ? Paths.get(cacheHome) : Paths.get(System.getProperty("user.home"), ".cache");
+      return base.resolve("jlox");
+  }
+
   private static void runFile(String path) throws IOException{
-      byte[] bytes = Files.readAllBytes(Paths.get(path));
-      run (new String(bytes, Charset.defaultCharset()));
+      Path file = Paths.get(path);
+      // Source hash the script is cached under, null when caching is off.
+      byte[] key = null;
+      List<Stmt> statements;
+
+      if (scannerMode.equals("mmap")){
+          // Scanned straight from the mapping, the source is never copied onto the heap.
+          MappedByteBuffer bytes = ByteScanner.map(file);
+          if (cache != null) key = ScriptCache.hash(bytes);
+          statements = load(key);
+          if (statements == null){
+              statements = compile(new StreamingTokenSource(new ByteScanner(bytes)::nextToken), key);
+          }
+      } else if (scannerMode.equals("buffer")){
+          byte[] bytes = Files.readAllBytes(file);
+          if (cache != null) key = ScriptCache.hash(bytes);
+          statements = load(key);
+          if (statements == null){
+              statements = compile(new Scanner(new String(bytes, Charset.defaultCharset())).scanToBuffer(), key);
+          }
+      } else {
+          // Scanned as it is read, neither the source nor its tokens are held in memory at once.
+          if (cache != null) key = ScriptCache.hash(file);
+          statements = load(key);
+          if (statements == null){
+              // The file is hashed again while it is scanned, it may have changed since.
+              MessageDigest digest = ScriptCache.digest();
+              try (Reader reader = new BufferedReader(new InputStreamReader(
+                      new DigestInputStream(Files.newInputStream(file), digest), Charset.defaultCharset().newDecoder()))) {
+                  statements = compile(new StreamingTokenSource(new Scanner(reader)::nextToken), null);
+              }
+              if (statements != null && key != null && MessageDigest.isEqual(key, digest.digest())){
+                  cache.store(key, statements);
+              }
+          }
+      }
+
+      if (statements != null){
+          if (profileOutput != null){
+              Profiler profiler = new Profiler(profileInterval);
+              interpreter.profiler = profiler;
+              profiler.start();
+              execute(statements);
+              int samples = profiler.stop(profileOutput);
+              System.err.println("Profile: " + samples + " samples written to " + profileOutput);
+          } else {
+              execute(statements);
+          }
+      }
 
       if (hadError) System.exit(65);
       if (hadRuntimeError) System.exit(70);
@@ -46,37 +176,76 @@ public class Lox {
   }
 
   private static void run(String source){
-      Scanner scanner = new Scanner (source);
-      List<Token> tokens = scanner.scanTokens();
+      run(new Scanner(source).scanToBuffer());
+  }
 
+  private static void run(TokenSource tokens){
+      List<Stmt> statements = compile(tokens, null);
+      if (statements != null) execute(statements);
+  }
+
+  private static List<Stmt> load(byte[] key){
+      return key == null ? null : cache.load(key);
+  }
+
+  // Parsed, optimized and resolved statements, null after a syntax error. Stored in the cache under key.
+  private static List<Stmt> compile(TokenSource tokens, byte[] key){
       Parser parser = new Parser(tokens);
       List<Stmt> statements = parser.parse();
 
-      if (hadError) return;
+      if (hadError) return null;
+
+      statements = new Optimizer().optimize(statements);
+
+      Resolver resolver = new Resolver();
+      resolver.resolve(statements);
+      if (hadError) return null;
+
+      if (key != null) cache.store(key, statements);
+      return statements;
+  }
+
+  private static void execute(List<Stmt> statements){
+      if (engine.equals("vm")){
+          VMFunction function = new Compiler(CONSOLE).compile(statements);
+          if (function == null) return;
+          vm.interpret(function);
+      } else if (engine.equals("closure")){
+          new ClosureCompiler().compile(statements).run(closureGlobals, Interpreter.STDOUT, CONSOLE);
+      } else {
+          interpreter.interpret(statements);
+      }
+  }
 
-      interpreter.interpret(statements);
+   // Reporter of everything jlox itself runs, LoxProgram and LoxContext bring their own.
+   static final ErrorReporter CONSOLE = new ErrorReporter(){
+       @Override
+       public void error(int line, String where, String message){
+           report(line, where, message);
+       }
 
-      /*for (Token token : tokens)
-      {
-          System.out.println(token);
-      }*/
-   }
+       @Override
+       public void runtimeError(RuntimeError error){
+           Lox.runtimeError(error);
+       }
+
+       @Override
+       public void note(String message){
+           System.out.println(message);
+       }
+   };
 
    static void error (int line, String errMsg){
-   report (line, "", errMsg);
+   CONSOLE.error(line, errMsg);
   }
 
   private  static void report(int line, String where, String errMsg){
-  System.err.println("[line " + line + "] Error" + where +  ": " +  errMsg );
+  System.err.println(ErrorReporter.format(line, where, errMsg));
   hadError = true;
   }
 
   static void error(Token token, String  message){
-        if (token.type == TokenType.EOF){
-        report(token.line, " at end ", message);
-        } else {
-            report(token.line, " at "+ token.lexeme+"'", message);
-        }
+        CONSOLE.error(token, message);
   }
 
     static void runtimeError(RuntimeError error){
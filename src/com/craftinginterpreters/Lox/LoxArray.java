@@ -0,0 +1,177 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+*  Value of an array literal:
+*
+*      var a = [1, 2, 3];
+*      a[0] = a[1] + a[2];
+*      push(a, 4);
+*      print len(a);        // 4
+*
+*  Indices are whole numbers from 0 to len(a) - 1, push appends at the end.
+*
+*  While every element is a number the elements are kept in a double[], one boxed Double per element
+*  would cost 16 bytes of header and a pointer to chase on every read. The first element which isn't a
+*  number moves them to an Object[] for good, later writes don't look at the types any more.
+*
+*  Q: Can tasks share an array?
+*  A: Reading one from several tasks is fine. Writes aren't synchronized: a task may miss another's
+*     write, or a push when two push at once, like two unsynchronized writes to a Java field. It never
+*     breaks the array itself, every access works on the storage it read once. Have one task own an
+*     array it writes, or pass the values over a channel.
+* */
+
+final class LoxArray {
+    // Elements of a literal, the VM's ARRAY instruction has a u16 operand.
+    static final int MAX_LITERAL = 0xffff;
+
+    // double[] while every element is a number, Object[] after the first one which isn't.
+    private Object storage;
+    private int size;
+
+    private LoxArray(Object storage, int size){
+        this.storage = storage;
+        this.size = size;
+    }
+
+    // Takes elements over, the caller doesn't use it any more.
+    static LoxArray of(Object[] elements){
+        double[] numbers = new double[elements.length];
+        for (int i = 0; i < elements.length; i++){
+            if (!(elements[i] instanceof Double)) return new LoxArray(elements, elements.length);
+            numbers[i] = (Double) elements[i];
+        }
+        return new LoxArray(numbers, elements.length);
+    }
+
+    int length(){
+        return size;
+    }
+
+    Object get(Token bracket, Object index){
+        Object storage = this.storage;
+        int position = position(bracket, index, storage);
+        if (storage instanceof double[]) return ((double[]) storage)[position];
+        return ((Object[]) storage)[position];
+    }
+
+    Object set(Token bracket, Object index, Object value){
+        Object storage = this.storage;
+        int position = position(bracket, index, storage);
+        if (storage instanceof double[]){
+            if (value instanceof Double){
+                ((double[]) storage)[position] = (Double) value;
+                return value;
+            }
+            storage = generalize((double[]) storage, size);
+        }
+        ((Object[]) storage)[position] = value;
+        return value;
+    }
+
+    void push(Object value){
+        Object storage = this.storage;
+        int size = this.size;
+        if (storage instanceof double[]){
+            double[] numbers = (double[]) storage;
+            if (value instanceof Double){
+                if (size >= numbers.length) numbers = Arrays.copyOf(numbers, grow(numbers.length));
+                numbers[size] = (Double) value;
+                this.storage = numbers;
+                this.size = size + 1;
+                return;
+            }
+            storage = generalize(numbers, size);
+        }
+        Object[] values = (Object[]) storage;
+        if (size >= values.length) values = Arrays.copyOf(values, grow(values.length));
+        values[size] = value;
+        this.storage = values;
+        this.size = size + 1;
+    }
+
+    /*
+    * The double[] holding the elements, null once they're generic. For SpecializingInterpreter, which
+    * reads numbers without boxing them: numbers()[position(bracket, index)] when position is below its
+    * length.
+    */
+    double[] numbers(){
+        Object storage = this.storage;
+        return storage instanceof double[] ? (double[]) storage : null;
+    }
+
+    int position(Token bracket, Object index){
+        return position(bracket, index, storage);
+    }
+
+    // Checks index against the size and against the storage it is used with, which may be stale.
+    private int position(Token bracket, Object index, Object storage){
+        if (!(index instanceof Double)){
+            throw new RuntimeError(bracket, "Array index must be a number.");
+        }
+        double value = (Double) index;
+        int position = (int) value;
+        if (position != value){
+            throw new RuntimeError(bracket, "Array index must be a whole number.");
+        }
+        int length = storage instanceof double[] ? ((double[]) storage).length : ((Object[]) storage).length;
+        if (position < 0 || position >= Math.min(size, length)){
+            throw new RuntimeError(bracket,
+                    "Array index " + Interpreter.Stringify(index) + " out of bounds for length " + size + ".");
+        }
+        return position;
+    }
+
+    private Object[] generalize(double[] numbers, int size){
+        Object[] values = new Object[Math.max(numbers.length, 1)];
+        for (int i = 0; i < size; i++){
+            values[i] = numbers[i];
+        }
+        storage = values;
+        return values;
+    }
+
+    private static int grow(int capacity){
+        if (capacity >= Integer.MAX_VALUE - 8) throw new NativeError("Array is too large.");
+        return (int) Math.min(Math.max(capacity * 2L, 8), Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+        append(text, new IdentityHashMap<>());
+        return text.toString();
+    }
+
+    // seen holds the arrays and maps being printed, an array inside itself prints as [...].
+    void append(StringBuilder text, Map<Object, Boolean> seen){
+        if (seen.put(this, true) != null){
+            text.append("[...]");
+            return;
+        }
+        Object storage = this.storage;
+        int size = Math.min(this.size,
+                storage instanceof double[] ? ((double[]) storage).length : ((Object[]) storage).length);
+        text.append('[');
+        for (int i = 0; i < size; i++){
+            if (i > 0) text.append(", ");
+            append(text, storage instanceof double[] ? (Object) ((double[]) storage)[i] : ((Object[]) storage)[i], seen);
+        }
+        text.append(']');
+        seen.remove(this);
+    }
+
+    static void append(StringBuilder text, Object value, Map<Object, Boolean> seen){
+        if (value instanceof LoxArray){
+            ((LoxArray) value).append(text, seen);
+        } else if (value instanceof LoxMap){
+            ((LoxMap) value).append(text, seen);
+        } else {
+            text.append(Interpreter.Stringify(value));
+        }
+    }
+}
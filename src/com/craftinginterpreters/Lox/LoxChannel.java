@@ -0,0 +1,97 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+*  Bounded FIFO channel for passing values between tasks, see LoxTask.
+*
+*      channel(capacity) : a new channel holding at most capacity values
+*      send(ch, value)   : waits while the channel is full
+*      receive(ch)       : waits while it is empty, false once it is closed and drained
+*      close(ch)         : senders fail from now on, receivers drain what is left
+*
+*  A producer closes the channel when it is done, so consumers can loop until receive gives false.
+*  Not nil: a variable holding nil reads as uninitialized.
+*
+*  Q: Why a lock and conditions instead of an ArrayBlockingQueue?
+*  A: Closing has to wake every blocked sender and receiver, which a BlockingQueue can't do, and
+*     Lox's nil is null, which it doesn't accept. ReentrantLock rather than synchronized because a
+*     virtual thread waiting in Object.wait keeps its carrier thread (JDK 21), one waiting on a
+*     Condition doesn't.
+* */
+
+final class LoxChannel {
+    static final int MAX_CAPACITY = 1 << 20;
+
+    private final Object[] buffer;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+
+    LoxChannel(int capacity){
+        buffer = new Object[capacity];
+    }
+
+    void send(Object value){
+        lock.lock();
+        try {
+            while (count == buffer.length && !closed){
+                await(notFull);
+            }
+            if (closed) throw new NativeError("Send on a closed channel.");
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Object receive(){
+        lock.lock();
+        try {
+            while (count == 0 && !closed){
+                await(notEmpty);
+            }
+            if (count == 0) return false;
+            Object value = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) % buffer.length;
+            count--;
+            notFull.signal();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close(){
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void await(Condition condition){
+        try {
+            condition.await();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while waiting on a channel.");
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "<channel>";
+    }
+}
@@ -0,0 +1,112 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/*
+*  Globals, output and error state of LoxProgram executions. Every context is isolated from the
+*  others, so concurrent executions each use their own. A context isn't thread-safe itself: it can run
+*  several programs one after the other, like the REPL, and later ones see the globals earlier ones
+*  left, but only one at a time.
+*
+*  Values go in and out as Java objects: nil is null, numbers are Double (set takes any Number),
+*  strings are String, booleans Boolean. Functions, arrays, maps, channels and tasks come out as the
+*  interpreter's own objects, which can be set back, or into another context, and used there.
+* */
+
+public final class LoxContext {
+    private final Interpreter interpreter = new Interpreter();
+    private RuntimeError error;
+
+    // print writes to System.out.
+    public LoxContext(){
+        this(new PrintWriter(System.out, true));
+    }
+
+    public LoxContext(Writer out){
+        interpreter.out = out instanceof PrintWriter ? (PrintWriter) out : new PrintWriter(out, true);
+        interpreter.reporter = new ErrorReporter(){
+            // The Interpreter only reports runtime errors, compile errors are LoxProgram's.
+            @Override
+            public void error(int line, String where, String message){
+                throw new IllegalStateException(ErrorReporter.format(line, where, message));
+            }
+
+            // The first error, a run's own comes before those of tasks it didn't join.
+            @Override
+            public void runtimeError(RuntimeError runtimeError){
+                if (error == null) error = runtimeError;
+            }
+        };
+    }
+
+    // Defines (or redefines) the global name.
+    public void set(String name, Object value){
+        interpreter.globals.define(name, toLox(value));
+    }
+
+    // Value of the global name, null when it is nil or not defined.
+    public Object get(String name){
+        Environment.Binding binding = interpreter.globals.bindingOf(name);
+        return binding == null ? null : toJava(binding.get());
+    }
+
+    // Every global, including the native functions every context starts with.
+    public void forEachGlobal(BiConsumer<String, Object> action){
+        interpreter.globals.forEachGlobal((name, value) -> action.accept(name, toJava(value)));
+    }
+
+    // The value of every global as the interpreter holds it, for forEachChangedGlobal.
+    Map<String, Object> snapshot(){
+        Map<String, Object> values = new HashMap<>();
+        interpreter.globals.forEachGlobal(values::put);
+        return values;
+    }
+
+    // Every global defined after snapshot was taken, or holding another value than it did then.
+    void forEachChangedGlobal(Map<String, Object> snapshot, BiConsumer<String, Object> action){
+        interpreter.globals.forEachGlobal((name, value) -> {
+            if (!snapshot.containsKey(name) || snapshot.get(name) != value) action.accept(name, toJava(value));
+        });
+    }
+
+    Object run(List<Stmt> statements) throws LoxException {
+        error = null;
+        Object result = interpreter.interpret(statements);
+        interpreter.out.flush();
+        if (error != null){
+            List<String> errors = new ArrayList<>();
+            errors.add(error.getMessage() + " [line " + error.token.line + "]");
+            throw new LoxException(errors, error.token.line);
+        }
+        return toJava(result);
+    }
+
+    // Whether set accepts value: a Lox value, or a Number or CharSequence it converts to one.
+    static boolean hasLoxValue(Object value){
+        return isLoxValue(value) || value instanceof Number || value instanceof CharSequence;
+    }
+
+    private static boolean isLoxValue(Object value){
+        return value == null || value instanceof Double || value instanceof Boolean
+                || value instanceof SLoxCallable || value instanceof LoxString
+                || value instanceof LoxArray || value instanceof LoxMap
+                || value instanceof LoxChannel || value instanceof LoxTask;
+    }
+
+    private static Object toLox(Object value){
+        if (isLoxValue(value)) return value;
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof CharSequence) return value.toString();
+        throw new IllegalArgumentException("Lox has no value for a " + value.getClass().getName());
+    }
+
+    private static Object toJava(Object value){
+        return value instanceof LoxString ? value.toString() : value;
+    }
+}
@@ -0,0 +1,29 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+*  A script that failed to compile (every error the Scanner and Parser found) or an execution that
+*  stopped with a runtime error. Messages read like jlox's.
+* */
+
+public class LoxException extends Exception {
+    private final List<String> errors;
+    private final int line;
+
+    LoxException(List<String> errors, int line){
+        super(String.join("\n", errors));
+        this.errors = Collections.unmodifiableList(errors);
+        this.line = line;
+    }
+
+    public List<String> getErrors(){
+        return errors;
+    }
+
+    // Line of the first error.
+    public int getLine(){
+        return line;
+    }
+}
@@ -0,0 +1,259 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+*  Value of map(), a hash table from keys to values:
+*
+*      var ages = map();
+*      ages["ann"] = 31;
+*      ages[7] = "seven";
+*      print ages["ann"];       // 31, a key which isn't there is a runtime error
+*      print has(ages, "bob");  // false
+*      remove(ages, 7);
+*      print len(ages);         // 1
+*      print keys(ages);        // [ann], an array of the keys in insertion order
+*
+*  Keys are compared like ==: strings by their text, numbers by value, anything else is only equal to
+*  itself. nil can't be a key.
+*
+*  Layout, the same as CPython's dict: entries are appended to parallel arrays in insertion order, and
+*  an open addressing index (linear probing) holds entry numbers. A number key lives in numbers[] as a
+*  double and keys[] holds NUMBER for it, so it's never boxed; a string key is the String itself, a
+*  LoxString is flattened into one first (short ones already are, see LoxString). Looking up a string
+*  or a number then allocates nothing. An entry costs about 16 bytes, plus 4 per index slot, where
+*  java.util.HashMap has a 32 byte node per entry and a boxed Double per number key.
+*
+*  Removing an entry clears its key, which also makes its index slot a tombstone: probes go past it and
+*  it's dropped when the table is rebuilt.
+*
+*  Q: Can tasks share a map?
+*  A: Like an array (see LoxArray): reads are fine, writes aren't synchronized and may get lost when two
+*     tasks write at once, but every operation works on the table it read once, so the map itself never
+*     breaks.
+* */
+
+final class LoxMap {
+    // In keys[] for an entry whose key is numbers[entry].
+    private static final Object NUMBER = new Object();
+    private static final int MIN_INDEX = 16;
+    private static final int MAX_INDEX = 1 << 30;
+
+    private static final class Table {
+        // Power of two sized, entry number + 1 per slot, 0 for an empty slot.
+        final int[] index;
+        final int shift;
+        // Entries in insertion order, keys[entry] is null once the entry is removed.
+        final Object[] keys;
+        final double[] numbers;
+        final Object[] values;
+        int count;
+        int size;
+
+        Table(int indexSize){
+            index = new int[indexSize];
+            shift = Integer.numberOfLeadingZeros(indexSize) + 1;
+            int capacity = indexSize / 4 * 3;
+            keys = new Object[capacity];
+            numbers = new double[capacity];
+            values = new Object[capacity];
+        }
+
+        // Fibonacci hashing, takes the top bits so every bit of hash counts.
+        int slot(int hash){
+            return (hash * 0x9E3779B9) >>> shift;
+        }
+    }
+
+    private Table table = new Table(MIN_INDEX);
+
+    int length(){
+        return table.size;
+    }
+
+    Object get(Token bracket, Object key){
+        Table table = this.table;
+        int entry = find(table, normalize(bracket, key));
+        if (entry < 0){
+            throw new RuntimeError(bracket, "Undefined key '" + Interpreter.Stringify(key) + "'.");
+        }
+        return table.values[entry];
+    }
+
+    Object set(Token bracket, Object key, Object value){
+        key = normalize(bracket, key);
+        Table table = this.table;
+        int entry = find(table, key);
+        if (entry >= 0){
+            table.values[entry] = value;
+            return value;
+        }
+
+        int count = table.count;
+        if (count == table.keys.length){
+            table = rebuild(table);
+            count = table.count;
+        }
+        int hash;
+        if (key instanceof Double){
+            double number = (Double) key;
+            table.keys[count] = NUMBER;
+            table.numbers[count] = number;
+            hash = hash(number);
+        } else {
+            table.keys[count] = key;
+            hash = key.hashCode();
+        }
+        table.values[count] = value;
+        insert(table, hash, count);
+        table.count = count + 1;
+        table.size++;
+        return value;
+    }
+
+    boolean has(Object key){
+        return key != null && find(table, normalize(null, key)) >= 0;
+    }
+
+    boolean remove(Object key){
+        if (key == null) return false;
+        Table table = this.table;
+        int entry = find(table, normalize(null, key));
+        if (entry < 0) return false;
+        table.keys[entry] = null;
+        table.values[entry] = null;
+        table.size--;
+        return true;
+    }
+
+    // Live keys in insertion order.
+    LoxArray keys(){
+        Table table = this.table;
+        Object[] keys = new Object[table.size];
+        int size = 0;
+        for (int entry = 0; entry < table.count && size < keys.length; entry++){
+            Object key = key(table, entry);
+            if (key != null) keys[size++] = key;
+        }
+        return LoxArray.of(size == keys.length ? keys : Arrays.copyOf(keys, size));
+    }
+
+    private static Object key(Table table, int entry){
+        Object key = table.keys[entry];
+        return key == NUMBER ? (Object) table.numbers[entry] : key;
+    }
+
+    // Strings are keyed by their text.
+    private static Object normalize(Token bracket, Object key){
+        if (key == null) throw new RuntimeError(bracket, "Map keys can't be nil.");
+        return key instanceof LoxString ? key.toString() : key;
+    }
+
+    private static int hash(double number){
+        long bits = Double.doubleToLongBits(number);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    // Entry number of key, -1 when it isn't in the map.
+    private static int find(Table table, Object key){
+        if (key instanceof String) return findString(table, (String) key);
+        if (key instanceof Double) return findNumber(table, (Double) key);
+
+        int[] index = table.index;
+        int mask = index.length - 1;
+        for (int slot = table.slot(key.hashCode()); ; slot = (slot + 1) & mask){
+            int entry = index[slot] - 1;
+            if (entry < 0) return -1;
+            if (key.equals(table.keys[entry])) return entry;
+        }
+    }
+
+    private static int findString(Table table, String key){
+        int[] index = table.index;
+        int mask = index.length - 1;
+        for (int slot = table.slot(key.hashCode()); ; slot = (slot + 1) & mask){
+            int entry = index[slot] - 1;
+            if (entry < 0) return -1;
+            Object candidate = table.keys[entry];
+            if (candidate == key || (candidate instanceof String && key.equals(candidate))) return entry;
+        }
+    }
+
+    // Same equality as Double.equals, which == on numbers ends up calling.
+    private static int findNumber(Table table, double key){
+        long bits = Double.doubleToLongBits(key);
+        int[] index = table.index;
+        int mask = index.length - 1;
+        for (int slot = table.slot(hash(key)); ; slot = (slot + 1) & mask){
+            int entry = index[slot] - 1;
+            if (entry < 0) return -1;
+            if (table.keys[entry] == NUMBER && Double.doubleToLongBits(table.numbers[entry]) == bits) return entry;
+        }
+    }
+
+    private static void insert(Table table, int hash, int entry){
+        int[] index = table.index;
+        int mask = index.length - 1;
+        int slot = table.slot(hash);
+        while (index[slot] != 0){
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    // New table without the removed entries, with room for at least as many again.
+    private Table rebuild(Table old){
+        int indexSize = MIN_INDEX;
+        while (indexSize / 4 * 3 < (old.size + 1) * 2){
+            if (indexSize == MAX_INDEX) throw new NativeError("Map is too large.");
+            indexSize *= 2;
+        }
+
+        Table table = new Table(indexSize);
+        int count = 0;
+        for (int entry = 0; entry < old.count; entry++){
+            Object key = old.keys[entry];
+            if (key == null) continue;
+            table.keys[count] = key;
+            table.numbers[count] = old.numbers[entry];
+            table.values[count] = old.values[entry];
+            insert(table, key == NUMBER ? hash(old.numbers[entry]) : key.hashCode(), count);
+            count++;
+        }
+        table.count = count;
+        table.size = count;
+        this.table = table;
+        return table;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+        append(text, new IdentityHashMap<>());
+        return text.toString();
+    }
+
+    // See LoxArray.append.
+    void append(StringBuilder text, Map<Object, Boolean> seen){
+        if (seen.put(this, true) != null){
+            text.append("{...}");
+            return;
+        }
+        Table table = this.table;
+        text.append('{');
+        boolean first = true;
+        for (int entry = 0; entry < table.count; entry++){
+            Object key = key(table, entry);
+            if (key == null) continue;
+            if (!first) text.append(", ");
+            first = false;
+            LoxArray.append(text, key, seen);
+            text.append(": ");
+            LoxArray.append(text, table.values[entry], seen);
+        }
+        text.append('}');
+        seen.remove(this);
+    }
+}
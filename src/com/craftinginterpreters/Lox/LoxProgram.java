@@ -0,0 +1,63 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+*  A compiled script for embedding Lox. Compile once, then execute it any number of times, from any
+*  number of threads at once, each execution in its own LoxContext:
+*
+*      LoxProgram program = LoxProgram.compile(source);
+*      LoxContext context = new LoxContext(writer);
+*      context.set("request", path);
+*      program.execute(context);
+*      Object response = context.get("response");
+*
+*  Q: How can one AST run on several threads at once?
+*  A: After Optimizer and Resolver are done nothing the program owns changes. What the Interpreter
+*     mutates is per execution: its environments, the functions a run declares, and the inline caches on
+*     Variable and Assign nodes, which are checked against the execution's own globals on every use,
+*     so a cache filled by another execution is only a miss.
+* */
+
+public final class LoxProgram {
+    private final List<Stmt> statements;
+
+    private LoxProgram(List<Stmt> statements){
+        this.statements = statements;
+    }
+
+    public static LoxProgram compile(String source) throws LoxException {
+        Errors errors = new Errors();
+        List<Stmt> statements = new Parser(new Scanner(source, errors).scanToBuffer(), errors).parse();
+        if (!errors.messages.isEmpty()) throw new LoxException(errors.messages, errors.firstLine);
+
+        statements = new Optimizer().optimize(statements);
+        new Resolver(errors).resolve(statements);
+        if (!errors.messages.isEmpty()) throw new LoxException(errors.messages, errors.firstLine);
+        return new LoxProgram(Collections.unmodifiableList(statements));
+    }
+
+    // Runs the program in context, returns what a return at top level returned, else null.
+    public Object execute(LoxContext context) throws LoxException {
+        return context.run(statements);
+    }
+
+    private static final class Errors implements ErrorReporter {
+        final List<String> messages = new ArrayList<>();
+        int firstLine = -1;
+
+        @Override
+        public void error(int line, String where, String message){
+            if (messages.isEmpty()) firstLine = line;
+            messages.add(ErrorReporter.format(line, where, message));
+        }
+
+        // Compiling doesn't run anything.
+        @Override
+        public void runtimeError(RuntimeError error){
+            throw error;
+        }
+    }
+}
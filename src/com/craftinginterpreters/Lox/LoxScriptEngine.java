@@ -0,0 +1,192 @@
+package com.craftinginterpreters.Lox;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+*  javax.script adapter over LoxProgram and LoxContext, found by ScriptEngineManager under the names
+*  "lox" and "jlox" and the extension "lox".
+*
+*  Every eval runs in a fresh LoxContext. Before it runs, the global and engine scope bindings are
+*  defined as Lox globals (engine scope wins), afterwards the globals the script defined or changed are
+*  put back into the engine scope. So engine.put("x", 1) is visible to the script, and functions and
+*  variables a script declares are visible to the next eval. A top level return is eval's result.
+*
+*  A binding Lox has no value for, any Java object but numbers, strings, booleans and the objects Lox
+*  scripts make, isn't defined: the script can't use it, and it stays in the bindings as it was. The
+*  natives every context starts with aren't copied into the bindings either.
+*
+*  Q: How can evals run concurrently?
+*  A: Each one compiles into its own LoxProgram and runs in its own LoxContext, they only share the
+*     Bindings. Copying in and out holds the Bindings' lock, and the engine's own Bindings lock
+*     themselves on every access, so concurrent evals and puts don't corrupt them.
+* */
+
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory factory;
+
+    LoxScriptEngine(ScriptEngineFactory factory){
+        this.factory = factory;
+        setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return run(compileProgram(script, context), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        LoxProgram program = compileProgram(script, context);
+        return new CompiledScript(){
+            @Override
+            public Object eval(ScriptContext context) throws ScriptException {
+                return run(program, context);
+            }
+
+            @Override
+            public ScriptEngine getEngine(){
+                return LoxScriptEngine.this;
+            }
+        };
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Bindings createBindings(){
+        return new SynchronizedBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory(){
+        return factory;
+    }
+
+    private static LoxProgram compileProgram(String script, ScriptContext context) throws ScriptException {
+        try {
+            return LoxProgram.compile(script);
+        } catch (LoxException e){
+            throw scriptException(e, context);
+        }
+    }
+
+    private static Object run(LoxProgram program, ScriptContext context) throws ScriptException {
+        LoxContext lox = new LoxContext(context.getWriter());
+        define(lox, context.getBindings(ScriptContext.GLOBAL_SCOPE));
+        Bindings engineScope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        define(lox, engineScope);
+        Map<String, Object> defined = lox.snapshot();
+
+        try {
+            return program.execute(lox);
+        } catch (LoxException e){
+            throw scriptException(e, context);
+        } finally {
+            if (engineScope != null){
+                synchronized (engineScope) {
+                    lox.forEachChangedGlobal(defined, engineScope::put);
+                }
+            }
+        }
+    }
+
+    private static void define(LoxContext lox, Bindings bindings){
+        if (bindings == null) return;
+        synchronized (bindings) {
+            for (Map.Entry<String, Object> binding : bindings.entrySet()){
+                if (LoxContext.hasLoxValue(binding.getValue())) lox.set(binding.getKey(), binding.getValue());
+            }
+        }
+    }
+
+    private static ScriptException scriptException(LoxException e, ScriptContext context){
+        Object file = context.getAttribute(ScriptEngine.FILENAME);
+        ScriptException exception = new ScriptException(e.getMessage(), file == null ? null : file.toString(), e.getLine());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException e){
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+
+    // SimpleBindings whose every access holds its own lock, the lock run() copies under. Iterating a
+    // view needs synchronized (bindings) around it, as with Collections.synchronizedMap.
+    private static final class SynchronizedBindings extends SimpleBindings {
+        SynchronizedBindings(){
+            super(new HashMap<>());
+        }
+
+        @Override
+        public synchronized Object put(String name, Object value){
+            return super.put(name, value);
+        }
+
+        @Override
+        public synchronized void putAll(Map<? extends String, ? extends Object> toMerge){
+            super.putAll(toMerge);
+        }
+
+        @Override
+        public synchronized Object get(Object key){
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized Object remove(Object key){
+            return super.remove(key);
+        }
+
+        @Override
+        public synchronized boolean containsKey(Object key){
+            return super.containsKey(key);
+        }
+
+        @Override
+        public synchronized boolean containsValue(Object value){
+            return super.containsValue(value);
+        }
+
+        @Override
+        public synchronized void clear(){
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size(){
+            return super.size();
+        }
+
+        @Override
+        public synchronized boolean isEmpty(){
+            return super.isEmpty();
+        }
+    }
+}
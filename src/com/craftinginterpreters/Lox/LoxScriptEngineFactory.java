@@ -0,0 +1,93 @@
+package com.craftinginterpreters.Lox;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+*  Registered in META-INF/services, so new ScriptEngineManager().getEngineByName("lox") finds it.
+* */
+
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+
+    @Override
+    public String getEngineName(){
+        return "jlox";
+    }
+
+    @Override
+    public String getEngineVersion(){
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions(){
+        return List.of("lox");
+    }
+
+    @Override
+    public List<String> getMimeTypes(){
+        return List.of("application/x-lox", "text/x-lox");
+    }
+
+    @Override
+    public List<String> getNames(){
+        return List.of("lox", "Lox", "jlox");
+    }
+
+    @Override
+    public String getLanguageName(){
+        return "Lox";
+    }
+
+    @Override
+    public String getLanguageVersion(){
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key){
+        switch (key){
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            // Evals run in separate contexts and only share the Bindings, see LoxScriptEngine.
+            case "THREADING": return "MULTITHREADED";
+            default: return null;
+        }
+    }
+
+    // Lox has no objects, so the "method" is a function taking the object first.
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args){
+        List<String> arguments = new ArrayList<>();
+        arguments.add(obj);
+        arguments.addAll(Arrays.asList(args));
+        return m + "(" + String.join(", ", arguments) + ")";
+    }
+
+    // Lox strings have no escapes, toDisplay can't contain a '"'.
+    @Override
+    public String getOutputStatement(String toDisplay){
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements){
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements){
+            program.append(statement).append('\n');
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine(){
+        return new LoxScriptEngine(this);
+    }
+}
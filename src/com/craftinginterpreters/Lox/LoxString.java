@@ -0,0 +1,131 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Arrays;
+
+/*
+*  String value produced by + and * on strings. It is a rope: concatenation and repetition only build
+*  a node, the characters are copied once when the text is needed (printed, compared, measured).
+*  Building a string with repeated appends is then linear instead of quadratic, and "ab" * 1000000
+*  doesn't allocate anything until it's printed.
+*
+*  String literals stay java.lang.String, Interpreter.isString accepts both.
+*
+*  Q: Why are short results flattened right away?
+*  A: A node costs more than copying a few characters, and a tree of tiny pieces is slow to walk.
+* */
+
+final class LoxString {
+    private static final int FLAT_LIMIT = 32;
+
+    final int length;
+    // Flattened text, set from the start for leaves and cached once a node is flattened.
+    private String flat;
+    // Concatenation: left + right. Repetition: left repeated up to length, right is null.
+    // Kept after flattening, so a node read by another thread stays consistent.
+    private final LoxString left;
+    private final LoxString right;
+
+    private LoxString(String flat){
+        this.flat = flat;
+        this.length = flat.length();
+        this.left = null;
+        this.right = null;
+    }
+
+    private LoxString(LoxString left, LoxString right, int length){
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static LoxString of(Object value){
+        return value instanceof LoxString ? (LoxString) value : new LoxString(value.toString());
+    }
+
+    // Returns null when the result would be longer than a Java string can be.
+    static LoxString concat(Object a, Object b){
+        LoxString left = of(a);
+        LoxString right = of(b);
+        long length = (long) left.length + right.length;
+        if (length > Integer.MAX_VALUE) return null;
+        if (length <= FLAT_LIMIT) return new LoxString(left.toString() + right.toString());
+        if (left.length == 0) return right;
+        if (right.length == 0) return left;
+        return new LoxString(left, right, (int) length);
+    }
+
+    // Less than one copy still gives one, as string repetition always has. Null when too long.
+    static LoxString repeat(Object value, int count){
+        LoxString piece = of(value);
+        if (count <= 1) return piece;
+        long length = (long) piece.length * count;
+        if (length > Integer.MAX_VALUE) return null;
+        if (length <= FLAT_LIMIT) return new LoxString(piece.toString().repeat(count));
+        return new LoxString(piece, null, (int) length);
+    }
+
+    @Override
+    public String toString(){
+        String text = flat;
+        if (text == null){
+            text = flatten();
+            flat = text;
+        }
+        return text;
+    }
+
+    /*
+    * Copies every leaf into one array. Walks the tree with an explicit stack: a string built by
+    * appending in a loop is a left leaning tree as deep as the number of appends.
+    * */
+    private String flatten(){
+        char[] chars = new char[length];
+        LoxString[] nodes = new LoxString[16];
+        int[] offsets = new int[16];
+        int top = 0;
+        nodes[top] = this;
+        offsets[top++] = 0;
+
+        while (top > 0){
+            LoxString node = nodes[--top];
+            int offset = offsets[top];
+            String text = node.flat;
+            if (text != null){
+                text.getChars(0, node.length, chars, offset);
+            } else if (node.right == null){
+                // Repetition: one copy of the piece, then double what's written until it's full.
+                String piece = node.left.toString();
+                piece.getChars(0, piece.length(), chars, offset);
+                int written = piece.length();
+                while (written < node.length){
+                    int copy = Math.min(written, node.length - written);
+                    System.arraycopy(chars, offset, chars, offset + written, copy);
+                    written += copy;
+                }
+            } else {
+                if (top + 2 > nodes.length){
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                nodes[top] = node.right;
+                offsets[top++] = offset + node.left.length;
+                nodes[top] = node.left;
+                offsets[top++] = offset;
+            }
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if (this == other) return true;
+        if (!(other instanceof LoxString)) return false;
+        LoxString string = (LoxString) other;
+        return length == string.length && toString().equals(string.toString());
+    }
+
+    @Override
+    public int hashCode(){
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,100 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.function.Supplier;
+
+/*
+*  Value of 'spawn f(args)': the call running on its own virtual thread. join(task) waits for it and
+*  gives its return value, or rethrows the runtime error it stopped with, so the error is reported
+*  with the line it happened at in the task.
+*
+*      var task = spawn work(1, 2);
+*      print join(task);
+*
+*  Every engine runs the call with state of its own (an Interpreter, a VM), only the globals are
+*  shared, see Environment for what a task may rely on when it reads or writes one.
+*
+*  Q: Why virtual threads?
+*  A: A task that waits in receive, send or join unmounts from its carrier thread, so a script can
+*     have thousands of tasks blocked at once, while tasks doing work still run on every core.
+*
+*  Q: What happens to tasks still running when the script ends?
+*  A: They are stopped with the process, like goroutines when main returns. Join the tasks whose
+*     work has to finish.
+*
+*  Q: Who reports the error of a task nobody joins?
+*  A: The run which spawned it, when it ends (a script, a REPL line, a LoxProgram execution): failed
+*     tasks queue themselves on the globals they share with it, and what is still unjoined there is
+*     reported through the spawner's ErrorReporter, so jlox exits with 70 like after an error of its
+*     own. A task which fails after that, or is stopped first, isn't reported: the next run on the same
+*     globals (the next REPL line, the next execution in a LoxContext) drops it rather than report it
+*     as its own. Tasks started by a task belong to the run which started the first one.
+* */
+
+final class LoxTask {
+    // The task whose body the current thread runs, null on a run's own threads.
+    private static final ThreadLocal<LoxTask> CURRENT = new ThreadLocal<>();
+
+    private final Thread thread;
+    private final ErrorReporter reporter;
+    // Number of the run on the globals the task belongs to, see Environment.run.
+    private final int run;
+    // Written by the task's thread, read after join or taken from failedTasks, which order them.
+    private Object result;
+    private Throwable failure;
+    private volatile boolean joined = false;
+
+    private LoxTask(Supplier<Object> body, Environment globals, ErrorReporter reporter){
+        this.reporter = reporter;
+        LoxTask spawner = CURRENT.get();
+        run = spawner != null ? spawner.run : globals.run();
+        thread = Thread.ofVirtual().name("lox-task").unstarted(() -> {
+            CURRENT.set(this);
+            try {
+                result = body.get();
+            } catch (Throwable error){
+                failure = error;
+                globals.failedTasks().add(this);
+            }
+        });
+    }
+
+    // Runs body as a task of the run using globals, an error nobody joins goes to reporter.
+    static LoxTask start(Supplier<Object> body, Environment globals, ErrorReporter reporter){
+        LoxTask task = new LoxTask(body, globals, reporter);
+        task.thread.start();
+        return task;
+    }
+
+    // Called by every engine when a run on globals ends. Failures of tasks from earlier runs are dropped.
+    static void reportFailures(Environment globals){
+        int run = globals.endRun();
+        for (LoxTask task; (task = globals.failedTasks().poll()) != null; ){
+            if (task.joined || task.run != run) continue;
+            if (task.failure instanceof RuntimeError){
+                task.reporter.runtimeError((RuntimeError) task.failure);
+            } else if (task.failure instanceof RuntimeException){
+                throw (RuntimeException) task.failure;
+            } else {
+                throw (Error) task.failure;
+            }
+        }
+    }
+
+    Object join(){
+        joined = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while joining a task.");
+        }
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        return result;
+    }
+
+    @Override
+    public String toString(){
+        return "<task>";
+    }
+}
@@ -0,0 +1,123 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  Value of 'memo fun', which caches results by argument values:
+*
+*      memo fun fib(n) {
+*          if (n < 2) { return n; }
+*          return fib(n - 1) + fib(n - 2);
+*      }
+*      print fib(80);
+*      print memoStats(fib);    // {hits: 78, misses: 81, evictions: 0, size: 81}
+*
+*  A call whose arguments are all numbers, strings, booleans or nil looks them up first and only runs
+*  the function on a miss. Other arguments (arrays, maps, functions) can change, or are only equal to
+*  themselves, so such a call always runs the function and isn't counted.
+*
+*  The cache holds the CAPACITY most recently used results, a miss when it is full evicts the least
+*  recently used one. Every engine wraps its own function object in one of these.
+*
+*  Caching is only right when a result depends on nothing but the arguments and the call has no other
+*  effect. Resolver rejects a memo function which prints or assigns to a global. It can't see what the
+*  functions it calls do, or writes into arrays and maps it reads, those are up to the script.
+*
+*  Q: What happens when tasks call the same memo function?
+*  A: The cache is locked while it is read or written, not during the call. Two tasks missing on the
+*     same arguments at once both run the function, and the later result is kept.
+* */
+
+final class MemoFunction implements SLoxCallable {
+    static final int CAPACITY = 4096;
+
+    // Cached nil, a null from the map means a miss.
+    private static final Object NIL = new Object();
+    // Key of an argument which can't be cached.
+    private static final Object UNCACHEABLE = new Object();
+
+    private final SLoxCallable function;
+    private final Map<Object, Object> cache = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest){
+            if (size() <= CAPACITY) return false;
+            evictions++;
+            return true;
+        }
+    };
+    // Guarded by cache.
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    MemoFunction(SLoxCallable function){
+        this.function = function;
+    }
+
+    @Override
+    public int arity(){
+        return function.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments){
+        Object key = key(arguments);
+        if (key == UNCACHEABLE) return function.call(interpreter, arguments);
+
+        synchronized (cache){
+            Object result = cache.get(key);
+            if (result != null){
+                hits++;
+                return result == NIL ? null : result;
+            }
+            misses++;
+        }
+
+        Object result = function.call(interpreter, arguments);
+        synchronized (cache){
+            cache.put(key, result == null ? NIL : result);
+        }
+        return result;
+    }
+
+    // The argument itself for one argument, else a list of them. Strings are keyed by their text.
+    private static Object key(List<Object> arguments){
+        if (arguments.size() == 1) return key(arguments.get(0));
+
+        Object[] keys = new Object[arguments.size()];
+        for (int i = 0; i < keys.length; i++){
+            keys[i] = key(arguments.get(i));
+            if (keys[i] == UNCACHEABLE) return UNCACHEABLE;
+        }
+        return Arrays.asList(keys);
+    }
+
+    private static Object key(Object argument){
+        if (argument == null || argument instanceof Double || argument instanceof Boolean
+                || argument instanceof String){
+            return argument;
+        }
+        if (argument instanceof LoxString) return argument.toString();
+        return UNCACHEABLE;
+    }
+
+    // Counters and size for memoStats.
+    LoxMap stats(){
+        LoxMap stats = new LoxMap();
+        synchronized (cache){
+            stats.set(null, "hits", (double) hits);
+            stats.set(null, "misses", (double) misses);
+            stats.set(null, "evictions", (double) evictions);
+            stats.set(null, "size", (double) cache.size());
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString(){
+        return function.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  Thrown by a native function, which doesn't know the call it was called from. The engine making
+*  the call turns it into a RuntimeError at the call's ')'.
+* */
+
+class NativeError extends RuntimeException {
+    NativeError(String message){
+        super(message);
+    }
+}
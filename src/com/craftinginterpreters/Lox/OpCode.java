@@ -0,0 +1,54 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  Instruction set of the bytecode VM. Every instruction is one opcode byte followed by its operands,
+*  operands are unsigned and big endian.
+*
+*  u8  : local slot, argument count
+*  u16 : constant pool index, jump offset, array literal length
+* */
+
+final class OpCode {
+    static final byte CONSTANT      = 0;   // u16 index       -> value
+    static final byte NIL           = 1;
+    static final byte TRUE          = 2;
+    static final byte FALSE         = 3;
+    static final byte POP           = 4;
+
+    static final byte GET_LOCAL     = 5;   // u8 slot         -> value
+    static final byte SET_LOCAL     = 6;   // u8 slot, value stays on the stack
+    static final byte DEFINE_LOCAL  = 7;   // u8 slot, pops the value
+    static final byte CLEAR_LOCALS  = 8;   // u8 first slot, u8 count
+    static final byte GET_GLOBAL    = 9;   // u16 index of a VM.GlobalSite
+    static final byte SET_GLOBAL    = 10;  // u16 index of a VM.GlobalSite
+    static final byte DEFINE_GLOBAL = 11;  // u16 index of the name Token
+
+    static final byte EQUAL         = 12;
+    static final byte NOT_EQUAL     = 13;
+    static final byte GREATER       = 14;
+    static final byte GREATER_EQUAL = 15;
+    static final byte LESS          = 16;
+    static final byte LESS_EQUAL    = 17;
+    static final byte ADD           = 18;
+    static final byte SUBTRACT      = 19;
+    static final byte MULTIPLY      = 20;
+    static final byte DIVIDE        = 21;
+    static final byte NOT           = 22;
+    static final byte NEGATE        = 23;
+
+    static final byte PRINT         = 24;
+    static final byte JUMP          = 25;  // u16 forward offset
+    static final byte JUMP_IF_FALSE = 26;  // u16 forward offset, condition stays on the stack
+    static final byte LOOP          = 27;  // u16 backward offset
+    static final byte CALL          = 28;  // u8 argument count
+    static final byte RETURN        = 29;
+    static final byte SPAWN         = 30;  // u8 argument count, callee and arguments -> LoxTask
+
+    static final byte ARRAY         = 31;  // u16 element count, elements -> LoxArray
+    static final byte GET_INDEX     = 32;  // array, index -> element
+    static final byte SET_INDEX     = 33;  // array, index, value -> value
+    static final byte MEMO          = 34;  // VMFunction -> MemoFunction calling it
+    static final byte TAIL_CALL     = 35;  // u8 argument count, 'return f(...)', see VM
+
+    private OpCode(){}
+}
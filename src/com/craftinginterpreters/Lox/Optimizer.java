@@ -0,0 +1,244 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  Optimizer runs between Parser and Resolver and rewrites the AST:
+*
+*  - literal arithmetic, string concatenation, comparisons, unary and logical operators on literals
+*    are folded into a single Literal,
+*  - if statements with a literal condition are replaced by the branch which runs, jabtak loops
+*    with a falsy literal condition are removed,
+*  - statements following a return or break (or an if whose branches both end in one) are dropped.
+*
+*  Folding uses Interpreter.binary itself, so the result is exactly what the Interpreter would compute.
+*  An operation which throws (e.g. division by zero) is left alone and throws at runtime as before.
+*  String results are LoxString ropes, which are immutable, so they fold like any other value.
+* */
+
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements){
+        List<Stmt> optimized = new ArrayList<>();
+        for (Stmt statement : statements){
+            // Parser returns null for statements it failed to parse.
+            Stmt stmt = statement == null ? null : optimize(statement);
+            if (stmt == null) continue;
+
+            optimized.add(stmt);
+            if (alwaysExits(stmt)) break;
+        }
+        return optimized;
+    }
+
+    private Expr optimize(Expr expr){
+        return expr == null ? null : expr.accept(this);
+    }
+
+    // The rewritten statement keeps the original's line, unless it has one of its own.
+    private Stmt optimize(Stmt stmt){
+        Stmt optimized = stmt.accept(this);
+        if (optimized != null && optimized.line == 0) optimized.line = stmt.line;
+        return optimized;
+    }
+
+    // Used where the grammar needs a statement, e.g. loop body, but the optimized one went away.
+    private Stmt optimizeOrEmpty(Stmt stmt){
+        Stmt optimized = optimize(stmt);
+        return optimized != null ? optimized : new Stmt.Block(new ArrayList<>());
+    }
+
+    // True when control never falls through to the statement after stmt.
+    private static boolean alwaysExits(Stmt stmt){
+        if (stmt instanceof Stmt.Return || stmt instanceof Stmt.Break) return true;
+        if (stmt instanceof Stmt.Block){
+            List<Stmt> statements = ((Stmt.Block) stmt).statements;
+            return !statements.isEmpty() && alwaysExits(statements.get(statements.size() - 1));
+        }
+        if (stmt instanceof Stmt.If){
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            return ifStmt.elseBlock != null && alwaysExits(ifStmt.ifBlock) && alwaysExits(ifStmt.elseBlock);
+        }
+        return false;
+    }
+
+    private static boolean isFoldable(Object value){
+        return value == null || value instanceof Double || value instanceof String
+                || value instanceof LoxString || value instanceof Boolean;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt){
+        return new Stmt.Expression(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt){
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt){
+        return new Stmt.Var(stmt.name, optimize(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt){
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt){
+        Expr condition = optimize(stmt.expr);
+
+        if (condition instanceof Expr.Literal){
+            // The branch keeps its Block, so it still gets its own scope.
+            if (Interpreter.isTruthy(((Expr.Literal) condition).value)){
+                return visitBlockStmt(stmt.ifBlock);
+            }
+            return stmt.elseBlock != null ? visitBlockStmt(stmt.elseBlock) : null;
+        }
+
+        Stmt.Block elseBlock = stmt.elseBlock != null ? (Stmt.Block) visitBlockStmt(stmt.elseBlock) : null;
+        return new Stmt.If(condition, (Stmt.Block) visitBlockStmt(stmt.ifBlock), elseBlock);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt){
+        Expr condition = optimize(stmt.condition);
+
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)){
+            return null;
+        }
+        return new Stmt.While(condition, optimizeOrEmpty(stmt.body));
+    }
+
+    @Override
+    public Stmt visitParallelStmt(Stmt.Parallel stmt){
+        return new Stmt.Parallel(stmt.keyword, stmt.name, optimize(stmt.start), stmt.comparison,
+                optimize(stmt.end), stmt.operator, stmt.accumulator, (Stmt.Block) visitBlockStmt(stmt.body));
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt){
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt){
+        return new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body), stmt.memo);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt){
+        return new Stmt.Return(stmt.keyword, optimize(stmt.value));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr){
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal){
+            try {
+                Object value = Interpreter.binary(expr.operator,
+                        ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+                if (isFoldable(value)) return new Expr.Literal(value);
+            } catch (RuntimeException error){
+                // Keep the expression, it fails the same way when it runs, which may be never. Not only
+                // RuntimeError: an operand binary doesn't expect, like nil + 1, throws something else.
+            }
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr){
+        Expr right = optimize(expr.right);
+
+        if (right instanceof Expr.Literal){
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type){
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double) return new Expr.Literal(-(double) value);
+                    break;
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr){
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        // Same rules as Interpreter.visitLogicalExpr, the result is one of the operands.
+        if (left instanceof Expr.Literal){
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            if (expr.operator.type == TokenType.OR){
+                return truthy ? left : right;
+            }
+            return truthy ? right : left;
+        }
+        return new Expr.Logical(expr.operator, left, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr){
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr){
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr){
+        return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr){
+        return new Expr.Assign(expr.name, optimize(expr.Value));
+    }
+
+    @Override
+    public Expr visitcallExpr(Expr.call expr){
+        List<Expr> arguments = new ArrayList<>();
+        for (Expr argument : expr.Arguments){
+            arguments.add(optimize(argument));
+        }
+        return new Expr.call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitSpawnExpr(Expr.Spawn expr){
+        return new Expr.Spawn(expr.keyword, (Expr.call) visitcallExpr(expr.call));
+    }
+
+    // Never folded into a Literal: every evaluation has to give a new array.
+    @Override
+    public Expr visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        List<Expr> elements = new ArrayList<>();
+        for (Expr element : expr.elements){
+            elements.add(optimize(element));
+        }
+        return new Expr.ArrayLiteral(expr.bracket, elements);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr){
+        return new Expr.Index(optimize(expr.object), expr.bracket, optimize(expr.index));
+    }
+
+    @Override
+    public Expr visitIndexSetExpr(Expr.IndexSet expr){
+        return new Expr.IndexSet(optimize(expr.object), expr.bracket, optimize(expr.index), optimize(expr.value));
+    }
+}
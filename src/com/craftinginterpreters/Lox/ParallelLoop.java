@@ -0,0 +1,113 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/*
+*  Runs the iterations of a parallel loop on a ForkJoinPool:
+*
+*      var sum = 0;
+*      firse parallel (var i = 0; i < n; i = i + 1) reduce (+ sum) {
+*          sum = sum + i * i;
+*      }
+*
+*  The range is split in halves until a piece is small enough, every piece runs on an interpreter of
+*  its own with one environment holding the loop variable (slot 0) and the piece's own copy of the
+*  reduction variable (slot 1), which starts at the operator's identity: 0 for +, 1 for *, +inf for
+*  min and -inf for max. When all pieces are done their copies are combined with the operator, and
+*  then with the variable's value from before the loop, which gets the result.
+*
+*  Everything else the body writes outside its own block is shared by all pieces at once, with the
+*  guarantees of spawned tasks (see Environment). Iterations may run in any order.
+*
+*  Q: Which pool?
+*  A: The one the loop is started from, when that thread is a ForkJoinPool worker, else the common
+*     pool (-Djava.util.concurrent.ForkJoinPool.common.parallelism sets its size). The starting thread
+*     works on the loop too.
+*
+*  Q: Is the result the same as a sequential loop's?
+*  A: For + and * on doubles only up to rounding: the pieces are combined as a balanced tree, whose
+*     shape depends on the pool's parallelism. min and max are exact.
+* */
+
+final class ParallelLoop {
+    // Pieces per worker thread, more than one so a worker that finishes early can steal.
+    private static final int PIECES_PER_THREAD = 8;
+
+    // Runs iterations [first, last) of the loop, returns the piece's reduction value, null without one.
+    interface Piece {
+        Object run(long first, long last);
+    }
+
+    private ParallelLoop(){}
+
+    static long iterations(Stmt.Parallel stmt, Object start, Object end){
+        if (!(start instanceof Double) || !(end instanceof Double)){
+            throw new RuntimeError(stmt.keyword, "Parallel loop bounds must be numbers.");
+        }
+        double span = (double) end - (double) start;
+        if (stmt.comparison.type == TokenType.LESS_EQUAL){
+            return span >= 0 ? (long) Math.floor(span) + 1 : 0;
+        }
+        return span > 0 ? (long) Math.ceil(span) : 0;
+    }
+
+    static Object run(long count, Token operator, Piece piece){
+        if (count == 0) return operator == null ? null : identity(operator);
+
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int parallelism = pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+        long grain = Math.max(1, count / ((long) parallelism * PIECES_PER_THREAD));
+        return new Range(0, count, grain, operator, piece).invoke();
+    }
+
+    static Object identity(Token operator){
+        switch (operator.type){
+            case PLUS: return 0.0;
+            case STAR: return 1.0;
+            default:
+                return operator.lexeme.equals("min") ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    static Object combine(Token operator, Object left, Object right){
+        Interpreter.checkNumberOperand(operator, left, right);
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator.type){
+            case PLUS: return a + b;
+            case STAR: return a * b;
+            default:
+                return operator.lexeme.equals("min") ? Math.min(a, b) : Math.max(a, b);
+        }
+    }
+
+    private static final class Range extends RecursiveTask<Object> {
+        private final long first;
+        private final long last;
+        private final long grain;
+        private final Token operator;
+        private final Piece piece;
+
+        Range(long first, long last, long grain, Token operator, Piece piece){
+            this.first = first;
+            this.last = last;
+            this.grain = grain;
+            this.operator = operator;
+            this.piece = piece;
+        }
+
+        @Override
+        protected Object compute(){
+            if (last - first <= grain) return piece.run(first, last);
+
+            long middle = first + (last - first) / 2;
+            Range right = new Range(middle, last, grain, operator, piece);
+            right.fork();
+            Object left = new Range(first, middle, grain, operator, piece).compute();
+            Object rightValue = right.join();
+            return operator == null ? null : combine(operator, left, rightValue);
+        }
+    }
+}
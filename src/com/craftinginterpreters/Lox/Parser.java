@@ -11,11 +11,24 @@ import static  com.craftinginterpreters.Lox.TokenType.*;
 class Parser{
 
     private static class ParseError extends RuntimeException {}
-    private final List<Token> tokens;
-    private int current =0;
+    private final TokenSource tokens;
+    private final ErrorReporter reporter;
+    // Loops enclosing the statement being parsed within the current function, 'break' needs one.
+    private int loopDepth = 0;
+    // Inside the body of a parallel loop, which neither break nor return can leave.
+    private boolean inParallelLoop = false;
 
     Parser(List<Token> tokens){
+        this(new ListTokenSource(tokens));
+    }
+
+    Parser(TokenSource tokens){
+        this(tokens, Lox.CONSOLE);
+    }
+
+    Parser(TokenSource tokens, ErrorReporter reporter){
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse(){
@@ -26,22 +39,29 @@ class Parser{
             }
             return  lStatements;
         } catch(ParseError error){
-            System.out.println("Caught parsing exception");
+            reporter.note("Caught parsing exception");
             return null;
         }
     }
 
 
     private Stmt declaration(){
+        int line = peek().line;
         try{
+            Stmt stmt;
             if (match(VAR)){
-                return varDeclaration();
+                stmt = varDeclaration();
             } else if (match (FUN)) {
-                return functionDeclaration();
+                stmt = functionDeclaration(false);
+            } else if (check(IDENTIFIERS) && peek().lexeme.equals("memo")) {
+                stmt = memoDeclaration();
+            } else {
+                stmt = statement();
             }
-            return statement();
+            stmt.line = line;
+            return stmt;
         } catch(ParseError error){
-            System.out.println("Caught Exception in declaration [parsing]");
+            reporter.note("Caught Exception in declaration [parsing]");
             synchronize();
             return null;
         }
@@ -54,17 +74,28 @@ class Parser{
             initializer = expression();
         }
 
-        consume(SEMICOLON, "Expect ';'  after variable declaration");
+        expect(SEMICOLON, "Expect ';'  after variable declaration");
 
         return new Stmt.Var(name, initializer);
     }
 
+    /*
+    *  'memo fun name(params) body', see MemoFunction. 'memo' is only special right before 'fun', it
+    *  stays a valid name everywhere else, so without 'fun' the statement is an expression starting
+    *  with the variable memo.
+    * */
+    private Stmt memoDeclaration(){
+        Token memo = advance();
+        if (match(FUN)) return functionDeclaration(true);
+        return expressionStatement(infixes(new Expr.Variable(memo), ASSIGNMENT));
+    }
+
     /*
     * Following function parses function  declaration and definition.
     * */
-    private Stmt functionDeclaration(){
+    private Stmt functionDeclaration(boolean memo){
         Token name = consume(IDENTIFIERS, "Expect function name after 'fun'");
-        consume(LEFT_PAREN, "Expect '(' after function name");
+        expect(LEFT_PAREN, "Expect '(' after function name");
 
         List<Token> params = new ArrayList<>();
         do {
@@ -76,10 +107,20 @@ class Parser{
             }
         } while(match(COMMA));
 
-        consume(RIGHT_PAREN, "Expect ')' after function parameters");
-        consume(LEFT_BRACE, "Expect '{' before function body starts");
-
-        return new Stmt.Function(name, params, block());
+        expect(RIGHT_PAREN, "Expect ')' after function parameters");
+        expect(LEFT_BRACE, "Expect '{' before function body starts");
+
+        // A break can't leave the function for a loop around its declaration.
+        int enclosingLoopDepth = loopDepth;
+        boolean enclosingParallelLoop = inParallelLoop;
+        loopDepth = 0;
+        inParallelLoop = false;
+        try {
+            return new Stmt.Function(name, params, block(), memo);
+        } finally {
+            loopDepth = enclosingLoopDepth;
+            inParallelLoop = enclosingParallelLoop;
+        }
 
     }
 
@@ -113,7 +154,25 @@ class Parser{
     // ()  explicitly.
 
     private Stmt breakStatement(){
-        throw error(peek(), "Break is not supported .");
+        Token keyword = previous();
+        if (loopDepth == 0){
+            error(keyword, inParallelLoop ? "Can't break out of a parallel loop."
+                    : "Can't break outside of a loop.");
+        }
+        expect(SEMICOLON, "Expect ';' after break");
+        return new Stmt.Break(null);
+    }
+
+    private Stmt loopBody(){
+        int line = peek().line;
+        loopDepth++;
+        try {
+            Stmt body = statement();
+            body.line = line;
+            return body;
+        } finally {
+            loopDepth--;
+        }
     }
 
     /*  Return actually can be put anywhere unlike break. Since if 'return' is not inside any function,
@@ -123,27 +182,36 @@ class Parser{
         Token keyword;
         Expr expr = null;
         keyword = previous();
+        if (inParallelLoop){
+            error(keyword, "Can't return from inside a parallel loop.");
+        }
 
         if (!check(SEMICOLON)){
             expr = expression();
         }
-        consume(SEMICOLON,"Expect ';' after return statement");
+        expect(SEMICOLON,"Expect ';' after return statement");
 
         return new Stmt.Return(keyword, expr);
     }
 
     private Stmt whileStatement(){
-        consume(LEFT_PAREN, "Expect '(' after while");
+        expect(LEFT_PAREN, "Expect '(' after while");
         Expr condition  = expression();
-        consume(RIGHT_PAREN, "Expect ')' after expression");
+        expect(RIGHT_PAREN, "Expect ')' after expression");
 
-        Stmt body = statement();
+        Stmt body = loopBody();
 
         return new Stmt.While(condition,body);
     }
 
     private Stmt forStatement(){
-        consume(LEFT_PAREN, "Expect '(' after for");
+        // Condition and increment are reported at the line of the loop's header.
+        int line = previous().line;
+        // 'parallel' is only special right after 'firse', it stays a valid name everywhere else.
+        if (check(IDENTIFIERS) && peek().lexeme.equals("parallel")){
+            return parallelStatement();
+        }
+        expect(LEFT_PAREN, "Expect '(' after for");
 
         Stmt initializer;
         if (match(SEMICOLON)){
@@ -153,36 +221,42 @@ class Parser{
         }else{
             initializer = expressionStatement();
         }
+        if (initializer != null) initializer.line = line;
 
         Expr condition;
         if (match(SEMICOLON)){
             condition = null;
         }else{
             condition =  expression();
-            consume(SEMICOLON, "Expect ';' after for loop condition.");
+            expect(SEMICOLON, "Expect ';' after for loop condition.");
         }
 
         Expr increment;
-        if (match(SEMICOLON)){
+        if (check(RIGHT_PAREN)){
             increment = null;
         }else{
             increment = expression();
         }
-        consume(RIGHT_PAREN,"Expect ')' after for statements.");
+        expect(RIGHT_PAREN,"Expect ')' after for statements.");
 
 
         List<Stmt> lBodyStmts = new ArrayList<> ();
 
-        Stmt body = statement();
+        Stmt body = loopBody();
         lBodyStmts.add(body);
 
-        if (increment != null) lBodyStmts.add(new Stmt.Expression(increment));
+        if (increment != null){
+            Stmt lIncrement = new Stmt.Expression(increment);
+            lIncrement.line = line;
+            lBodyStmts.add(lIncrement);
+        }
 
         // body and increment will be combined to form a new block statement.
 
         Stmt modifiedBody = new Stmt.Block(lBodyStmts);
 
         Stmt.While lWhileStmt = new Stmt.While(condition, modifiedBody);
+        lWhileStmt.line = line;
 
         List<Stmt> lStmts = new ArrayList<> ();
         if (initializer  != null) lStmts.add(initializer);
@@ -191,17 +265,104 @@ class Parser{
         return new Stmt.Block(lStmts);
     }
 
+    private static final String PARALLEL_HEADER =
+            "Expect a parallel loop header like (var i = start; i < end; i = i + 1).";
+
+    /*
+    *  firse parallel (var i = start; i < end; i = i + 1) reduce (+ sum) body
+    *
+    *  The iterations are split across a ForkJoinPool, see ParallelLoop. The header has to count a
+    *  new variable up by one, to '<' or '<=' an end, so the range is known before the loop starts.
+    *  'reduce (op name)' is optional, op is one of + * min max.
+    * */
+    private Stmt parallelStatement(){
+        Token keyword = advance();
+        expect(LEFT_PAREN, "Expect '(' after 'parallel'.");
+        expect(VAR, PARALLEL_HEADER);
+        Token name = consume(IDENTIFIERS, PARALLEL_HEADER);
+        expect(EQUAL, PARALLEL_HEADER);
+        Expr start = expression();
+        expect(SEMICOLON, PARALLEL_HEADER);
+
+        expectName(name);
+        if (!match(LESS, LESS_EQUAL)) throw error(peek(), PARALLEL_HEADER);
+        Token comparison = previous();
+        Expr end = expression();
+        expect(SEMICOLON, PARALLEL_HEADER);
+
+        expectName(name);
+        expect(EQUAL, PARALLEL_HEADER);
+        expectName(name);
+        expect(PLUS, PARALLEL_HEADER);
+        Token step = consume(NUMBER, PARALLEL_HEADER);
+        if (!step.literal.equals(1.0)) throw error(step, PARALLEL_HEADER);
+        expect(RIGHT_PAREN, PARALLEL_HEADER);
+
+        Token operator = null;
+        Expr.Variable accumulator = null;
+        if (check(IDENTIFIERS) && peek().lexeme.equals("reduce")){
+            tokens.advance();
+            expect(LEFT_PAREN, "Expect '(' after 'reduce'.");
+            if (match(PLUS, STAR)){
+                operator = previous();
+            } else if (check(IDENTIFIERS) && (peek().lexeme.equals("min") || peek().lexeme.equals("max"))){
+                operator = advance();
+            } else {
+                throw error(peek(), "Expect +, *, min or max after 'reduce ('.");
+            }
+            Token target = consume(IDENTIFIERS, "Expect the name of the variable to reduce into.");
+            if (target.lexeme.equals(name.lexeme)){
+                throw error(target, "Can't reduce into the loop variable.");
+            }
+            accumulator = new Expr.Variable(target);
+            expect(RIGHT_PAREN, "Expect ')' after reduction.");
+        }
+
+        int line = peek().line;
+        int enclosingLoopDepth = loopDepth;
+        boolean enclosingParallelLoop = inParallelLoop;
+        loopDepth = 0;
+        inParallelLoop = true;
+        Stmt body;
+        try {
+            body = statement();
+        } finally {
+            loopDepth = enclosingLoopDepth;
+            inParallelLoop = enclosingParallelLoop;
+        }
+        body.line = line;
+
+        Stmt.Block block;
+        if (body instanceof Stmt.Block){
+            block = (Stmt.Block) body;
+        } else {
+            List<Stmt> statements = new ArrayList<>();
+            statements.add(body);
+            block = new Stmt.Block(statements);
+            block.line = line;
+        }
+        return new Stmt.Parallel(keyword, name, start, comparison, end, operator, accumulator, block);
+    }
+
+    private void expectName(Token name){
+        if (check(IDENTIFIERS) && peek().lexeme.equals(name.lexeme)){
+            tokens.advance();
+            return;
+        }
+        throw error(peek(), PARALLEL_HEADER);
+    }
+
     private Stmt ifStatement(){
         consume (LEFT_PAREN, "'(' missing after if");
         Expr expr = expression();
         consume (RIGHT_PAREN, "')' missing after expression in if");
-        consume(LEFT_BRACE, "if block should start with a '{'");
+        expect(LEFT_BRACE, "if block should start with a '{'");
 
         Stmt.Block ifBlock = new Stmt.Block(block());
         Stmt.Block elseBlock  = null;
 
         if (match(ELSE)){
-            consume(LEFT_BRACE, "else block should start with a '{'");
+            expect(LEFT_BRACE, "else block should start with a '{'");
             elseBlock = new Stmt.Block(block());
         }
 
@@ -215,84 +376,148 @@ class Parser{
             statements.add(declaration());
         }
 
-        consume(RIGHT_BRACE, "Expect '}' after block.");
+        expect(RIGHT_BRACE, "Expect '}' after block.");
         return statements;
 
     }
     private Stmt printStatement() {
             Expr value = expression();
-            consume(SEMICOLON,"Expect ';' after print statement");
+            expect(SEMICOLON,"Expect ';' after print statement");
             return new  Stmt.Print(value);
     }
 
     private Stmt expressionStatement(){
-            Expr expr  = expression();
-            consume(SEMICOLON,"Expect ';' after expression");
-            return  new Stmt.Expression(expr);
+            return expressionStatement(expression());
     }
 
-    private Expr expression(){
-        return assignment();
+    private Stmt expressionStatement(Expr expr){
+            expect(SEMICOLON,"Expect ';' after expression");
+            return  new Stmt.Expression(expr);
     }
 
-    private Expr assignment(){
-        Expr expr = logical_or();
-
-        if (match(EQUAL)){
-            Token name = ((Expr.Variable)expr).name;
-            Expr right = assignment();
-
-            if (expr instanceof Expr.Variable){
-                return new Expr.Assign(name, right);
-            }
-            error(name, "Invalid assignment  target");
-        }
-
-        return expr;
+    /*
+    *  Expressions are parsed by precedence climbing (a Pratt parser) instead of one method per
+    *  precedence level: an operand is parsed once, then PRECEDENCE tells for the next token whether it
+    *  continues the expression as an infix operator and how tightly it binds. A plain operand no
+    *  longer descends through ten levels of calls, and the operator is looked up in a table.
+    *
+    *  Precedence, loosest first; binary operators are left associative, '=' is right associative.
+    *      =            ASSIGNMENT
+    *      or           OR
+    *      and          AND
+    *      == !=        EQUALITY
+    *      > >= < <=    COMPARISON
+    *      + -          TERM
+    *      * /          FACTOR
+    *      ! - spawn    UNARY  (prefix)
+    *      () []        CALL
+    * */
+    private static final int NONE = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int OR_PRECEDENCE = 2;
+    private static final int AND_PRECEDENCE = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    // Infix precedence by TokenType ordinal, NONE for tokens which end an expression.
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        PRECEDENCE[EQUAL.ordinal()] = ASSIGNMENT;
+        PRECEDENCE[OR.ordinal()] = OR_PRECEDENCE;
+        PRECEDENCE[AND.ordinal()] = AND_PRECEDENCE;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[PLUS.ordinal()] = TERM;
+        PRECEDENCE[MINUS.ordinal()] = TERM;
+        PRECEDENCE[STAR.ordinal()] = FACTOR;
+        PRECEDENCE[SLASH.ordinal()] = FACTOR;
+        PRECEDENCE[LEFT_PAREN.ordinal()] = CALL;
+        PRECEDENCE[LEFT_BRACKET.ordinal()] = CALL;
     }
 
-    private Expr logical_or(){
-        Expr expr = logical_and();
+    private Expr expression(){
+        return expression(ASSIGNMENT);
+    }
 
-        while(match(OR)){
-            Token operator = previous();
-            Expr right = logical_and();
-            expr = new Expr.Logical(operator, expr, right);
-        }
-        return  expr;
+    // Parses an expression whose infix operators bind at least as tightly as 'precedence'.
+    private Expr expression(int precedence){
+        return infixes(prefix(), precedence);
     }
 
-    private Expr logical_and(){
-        Expr expr = equality();
+    // Continues an expression whose first operand, expr, is already parsed.
+    private Expr infixes(Expr expr, int precedence){
+        for (;;){
+            TokenType type = tokens.peekType();
+            int infixPrecedence = PRECEDENCE[type.ordinal()];
+            if (infixPrecedence == NONE || infixPrecedence < precedence) return expr;
 
-        while(match(AND)){
-            Token operator  = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(operator, expr, right);
+            tokens.advance();
+            expr = infix(expr, type, infixPrecedence);
         }
-        return expr;
     }
 
-    private Expr equality(){
-        Expr expr  = comparison();
-
-        while (match(BANG_EQUAL, EQUAL_EQUAL)){
-            Token operator = previous();
-            Expr right  = comparison();
-            expr = new Expr.Binary(expr,operator, right);
+    private Expr infix(Expr left, TokenType type, int precedence){
+        switch (type){
+            case EQUAL: {
+                Token equals = previous();
+                Expr right = expression(ASSIGNMENT);
+                if (left instanceof Expr.Variable){
+                    return new Expr.Assign(((Expr.Variable) left).name, right);
+                }
+                if (left instanceof Expr.Index){
+                    Expr.Index index = (Expr.Index) left;
+                    return new Expr.IndexSet(index.object, index.bracket, index.index, right);
+                }
+                error(equals, "Invalid assignment  target");
+                return left;
+            }
+            case OR:
+            case AND: {
+                Token operator = previous();
+                Expr right = expression(precedence + 1);
+                return new Expr.Logical(operator, left, right);
+            }
+            case LEFT_PAREN:
+                return finishCall(left);
+            case LEFT_BRACKET: {
+                Expr index = expression();
+                Token bracket = consume(RIGHT_BRACKET, "Expect ']' after index.");
+                return new Expr.Index(left, bracket, index);
+            }
+            default: {
+                Token operator = previous();
+                Expr right = expression(precedence + 1);
+                return new Expr.Binary(left, operator, right);
+            }
         }
-
-        return expr;
     }
 
     private Token previous(){
-        return tokens.get(current-1);
+        return tokens.previous();
+    }
+
+    // Single type overload, a varargs call would allocate an array every time.
+    private boolean match(TokenType type){
+        if (check(type)){
+            tokens.advance();
+            return true;
+        }
+        return false;
     }
 
     private boolean match(TokenType...  types){
         for(TokenType type : types){
             if(check(type)){
-                advance();
+                tokens.advance();
                 return true;
             }
         }
@@ -301,63 +526,20 @@ class Parser{
 
     private  boolean check(TokenType type){
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        tokens.advance();
         return previous();
     }
 
     private  boolean  isAtEnd(){
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 
     private Token peek(){
-        return tokens.get(current);
-    }
-
-    private Expr comparison(){
-        Expr expr = addition();
-
-        while(match(GREATER_EQUAL, GREATER, LESS, LESS_EQUAL)){
-            Token operator = previous();
-            Expr right = addition();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr addition(){
-        Expr expr = multiplication();
-
-        while(match(PLUS, MINUS)){
-            Token operator = previous();
-            Expr right  = multiplication();
-            expr  =  new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr multiplication(){
-        Expr expr = unary();
-
-        while(match(SLASH, STAR)){
-            Token operator  =  previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr unary(){
-        if (match(BANG,  MINUS)){
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
-
-        return call();
+        return tokens.peek();
     }
 
     // Q: Why does function Stmt class just  contain one block statement  instead of List<Stmt>?
@@ -379,20 +561,6 @@ class Parser{
      *  We also pass a String arg to function statement parser so as to differentiate  between  functions
      *  and class methods.
      * */
-    private Expr call() {
-        Expr expr = primary();
-
-        //Specifically not using while(match(LEFT_PAREN))
-        while(true){
-            if (match(LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else {
-                break;
-            }
-        }
-        return expr;
-    }
-
     private Expr finishCall(Expr callee){
         List<Expr> arguments = new ArrayList<>();
 
@@ -411,7 +579,22 @@ class Parser{
     }
 
 
-    private Expr primary(){
+    // Operand or prefix operator starting an expression.
+    private Expr prefix(){
+        if (match(BANG,  MINUS)){
+            Token operator = previous();
+            Expr right = expression(UNARY);
+            return new Expr.Unary(operator, right);
+        }
+
+        // 'spawn f(args)': the operand has to be a call, its callee and arguments are evaluated first.
+        if (match(SPAWN)){
+            Token keyword = previous();
+            Expr call = expression(CALL);
+            if (call instanceof Expr.call) return new Expr.Spawn(keyword, (Expr.call) call);
+            throw error(keyword, "Expect a function call after 'spawn'.");
+        }
+
         if (match(FALSE)) return new Expr.Literal(false);
         if (match(TRUE)) return new Expr.Literal(true);
         if (match(NIL)) return new Expr.Literal(null);
@@ -422,34 +605,59 @@ class Parser{
 
         if (match(LEFT_PAREN)){
             Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression");
+            expect(RIGHT_PAREN, "Expect ')' after expression");
             return new Expr.Grouping(expr);
         }
 
         if (match(IDENTIFIERS)){
             return new Expr.Variable(previous());
         }
+
+        // Array literal: '[' (expression (',' expression)*)? ']'
+        if (match(LEFT_BRACKET)){
+            Token bracket = previous();
+            List<Expr> elements = new ArrayList<>();
+            if (!check(RIGHT_BRACKET)){
+                do {
+                    if (elements.size() >= LoxArray.MAX_LITERAL){
+                        error(peek(), "Cannot have more than " + LoxArray.MAX_LITERAL + " elements in an array literal.");
+                    }
+                    elements.add(expression());
+                } while (match(COMMA));
+            }
+            expect(RIGHT_BRACKET, "Expect ']' after array elements.");
+            return new Expr.ArrayLiteral(bracket, elements);
+        }
         throw error(peek(), "Unexpected symbol during parsing.");
     }
 
     private Token consume(TokenType type, String message){
-        if (check(type)) return advance();
+        expect(type, message);
+        return previous();
+    }
+
+    // consume for tokens the Parser doesn't keep, a TokenBuffer then never materializes them.
+    private void expect(TokenType type, String message){
+        if (check(type)){
+            tokens.advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private ParseError error(Token token, String message){
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
     private void synchronize(){
-        advance();
+        tokens.advance();
 
         while(!isAtEnd()){
             if (previous().type == SEMICOLON) return;
 
-            switch(peek().type){
+            switch(tokens.peekType()){
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -461,7 +669,7 @@ class Parser{
                 case BREAK:
                     return;
             }
-            advance();
+            tokens.advance();
         }
 
     }
@@ -0,0 +1,292 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  Resolver runs once between Parser and Interpreter and binds every local variable use to a
+*  (depth, slot) pair: depth is the number of environments to hop from the current one, slot is the
+*  index inside that environment. Anything which is not found in a local scope is a global and stays
+*  a name lookup (depth == -1).
+*
+*  It also checks that memo functions are pure (see MemoFunction): their bodies, and those of functions
+*  declared in them, may neither print nor assign to a global.
+*
+*  Q: Why does resolution stop at the function boundary?
+*  A: SLoxFunction.call creates the function environment with globals as its enclosing environment,
+*     there are no closures. So inside a function body only its own scopes and globals are visible.
+* */
+
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Every scope maps a name to its slot, scopes.size()-1 is the innermost scope.
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+    // Index of the outermost scope of the function being resolved, lookups don't go below it.
+    private int functionScope = 0;
+    // Resolving the body of a memo function.
+    private boolean inMemoFunction = false;
+    private final ErrorReporter reporter;
+
+    Resolver(){
+        this(Lox.CONSOLE);
+    }
+
+    Resolver(ErrorReporter reporter){
+        this.reporter = reporter;
+    }
+
+    void resolve(List<Stmt> statements){
+        for (Stmt statement : statements){
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt){
+        // Parser returns null for statements it failed to parse.
+        if (stmt != null) stmt.accept(this);
+    }
+
+    private void resolve(Expr expr){
+        expr.accept(this);
+    }
+
+    private void beginScope(){
+        scopes.add(new HashMap<>());
+    }
+
+    // Returns the number of slots the scope needs, the Interpreter sizes its frame with it.
+    private int endScope(){
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    /*
+    * A block which declares nothing doesn't get a scope (and the Interpreter doesn't allocate a frame
+    * for it), so its statements are resolved as part of the enclosing scope. A declaration lands in
+    * the block's scope when it is one of its statements or the body of one of its loops.
+    * */
+    private static boolean declaresLocals(List<Stmt> statements){
+        for (Stmt statement : statements){
+            Stmt stmt = statement;
+            while (stmt instanceof Stmt.While){
+                stmt = ((Stmt.While) stmt).body;
+            }
+            if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Function) return true;
+        }
+        return false;
+    }
+
+    /*
+    * Returns the slot for name in the innermost scope or -1 at global level. Redeclaring a name
+    * in the same scope reuses its slot, which is what Environment.define did with the HashMap.
+    * */
+    private int declare(Token name){
+        if (scopes.isEmpty()) return -1;
+
+        Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+        Integer slot = scope.get(name.lexeme);
+        if (slot == null){
+            slot = scope.size();
+            scope.put(name.lexeme, slot);
+        }
+        return slot;
+    }
+
+    // Returns {depth, slot}, or null when name has to be looked up in globals.
+    private int[] resolveLocal(Token name){
+        for (int i = scopes.size() - 1; i >= functionScope; i--){
+            Integer slot = scopes.get(i).get(name.lexeme);
+            if (slot != null){
+                return new int[]{scopes.size() - 1 - i, slot};
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt){
+        if (!declaresLocals(stmt.statements)){
+            resolve(stmt.statements);
+            return null;
+        }
+        beginScope();
+        resolve(stmt.statements);
+        stmt.slotCount = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt){
+        // Initializer is resolved first, so 'var a = a;' reads the outer 'a' as it always did.
+        if (stmt.initializer != null){
+            resolve(stmt.initializer);
+        }
+        stmt.slot = declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt){
+        stmt.slot = declare(stmt.name);
+
+        int enclosingFunctionScope = functionScope;
+        boolean enclosingMemoFunction = inMemoFunction;
+        beginScope();
+        functionScope = scopes.size() - 1;
+        inMemoFunction = inMemoFunction || stmt.memo;
+        // Parameters occupy the first slots, in order, SLoxFunction.call relies on it.
+        for (Token param : stmt.params){
+            declare(param);
+        }
+        resolve(stmt.body);
+        stmt.slotCount = endScope();
+        functionScope = enclosingFunctionScope;
+        inMemoFunction = enclosingMemoFunction;
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt){
+        resolve(stmt.expr);
+        resolve(stmt.ifBlock);
+        if (stmt.elseBlock != null) resolve(stmt.elseBlock);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt){
+        if (stmt.condition != null) resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt){
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt){
+        if (inMemoFunction) reporter.error(stmt.line, "Can't print inside a memo function.");
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt){
+        if (stmt.value != null) resolve(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt){
+        resolve(stmt.start);
+        resolve(stmt.end);
+        if (stmt.accumulator != null) resolve(stmt.accumulator);
+
+        beginScope();
+        // The loop variable takes slot 0 and the piece's copy of the accumulator slot 1, see ParallelLoop.
+        declare(stmt.name);
+        if (stmt.accumulator != null) declare(stmt.accumulator.name);
+        resolve(stmt.body);
+        stmt.slotCount = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt){
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr){
+        int[] local = resolveLocal(expr.name);
+        if (local != null){
+            expr.depth = local[0];
+            expr.slot = local[1];
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr){
+        resolve(expr.Value);
+        int[] local = resolveLocal(expr.name);
+        if (local != null){
+            expr.depth = local[0];
+            expr.slot = local[1];
+        } else if (inMemoFunction){
+            reporter.error(expr.name, "Can't assign to a global inside a memo function.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr){
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr){
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr){
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr){
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr){
+        return null;
+    }
+
+    @Override
+    public Void visitcallExpr(Expr.call expr){
+        resolve(expr.callee);
+        for (Expr argument : expr.Arguments){
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSpawnExpr(Expr.Spawn expr){
+        return visitcallExpr(expr.call);
+    }
+
+    @Override
+    public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+        for (Expr element : expr.elements){
+            resolve(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr){
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexSetExpr(Expr.IndexSet expr){
+        resolve(expr.object);
+        resolve(expr.index);
+        resolve(expr.value);
+        return null;
+    }
+}
@@ -8,9 +8,3 @@ class RuntimeError extends RuntimeException {
         this.token = token;
     }
 }
-    class RuntimeBreak extends RuntimeException{
-        RuntimeBreak(String message){
-            super(message);
-        }
-    }
-
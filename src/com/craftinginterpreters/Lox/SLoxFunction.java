@@ -4,6 +4,11 @@ import java.util.List;
 
 class SLoxFunction implements SLoxCallable{
     private final Stmt.Function declaration;
+    // Tiering state: calls counted until the JIT threshold, then the compiled code is used.
+    // Spawned tasks share the function, compiled is volatile so they only see it constructed.
+    private int callCount = 0;
+    private volatile JitFunction compiled;
+    private boolean jitFailed = false;
 
     SLoxFunction(Stmt.Function stmt){
         declaration  =  stmt;
@@ -16,18 +21,67 @@ class SLoxFunction implements SLoxCallable{
 
     @Override
     public Object call (Interpreter interpreter, List<Object> arguments){
-        Environment  environment = new Environment (interpreter.globals);
+        Profiler profiler = interpreter.profiler;
+        if (profiler == null) return run(interpreter, arguments);
 
-        for(int i=0;i<declaration.params.size();i++){
-            environment.define((declaration.params.get(i).lexeme), arguments.get(i));
+        profiler.enter(declaration);
+        try {
+            return run(interpreter, arguments);
+        } finally {
+            profiler.exit();
         }
+    }
 
-        try {
-            interpreter.executeBlockStmt(declaration.body, environment);
-        } catch(Return returnValue){
-            return returnValue.value;
+    // Runs tail calls left by the body in a loop, see Interpreter.tailCall.
+    private Object run(Interpreter interpreter, List<Object> arguments){
+        SLoxFunction function = this;
+        Environment environment = null;
+        for (;;){
+            Object result;
+            if (function.compiled != null){
+                result = function.compiled.invoke(interpreter, arguments);
+            } else {
+                JitFunction compiled = function.tierUp(interpreter);
+                if (compiled != null){
+                    result = compiled.invoke(interpreter, arguments);
+                } else {
+                    // A self tail call gets the same frame back, cleared.
+                    if (environment == null){
+                        environment = new Environment(interpreter.globals, function.declaration.slotCount);
+                    } else {
+                        environment.clearSlots();
+                    }
+                    result = function.execute(interpreter, arguments, environment);
+                }
+            }
+
+            if (!(result instanceof Interpreter.TailCall)) return result;
+            Interpreter.TailCall tailCall = (Interpreter.TailCall) result;
+            if (tailCall.function != function){
+                environment = null;
+                if (interpreter.profiler != null) interpreter.profiler.replace(tailCall.function.declaration);
+            }
+            function = tailCall.function;
+            arguments = tailCall.arguments;
         }
-        return  null;
+    }
+
+    private JitFunction tierUp(Interpreter interpreter){
+        JitCompiler jit = interpreter.jit;
+        if (jit != null && !jitFailed && ++callCount >= jit.threshold){
+            compiled = jit.compile(declaration, callCount);
+            if (compiled == null) jitFailed = true;
+        }
+        return compiled;
+    }
+
+    private Object execute(Interpreter interpreter, List<Object> arguments, Environment environment){
+        for(int i=0;i<declaration.params.size();i++){
+            environment.defineAt(i, arguments.get(i));
+        }
+
+        Object completion = interpreter.executeBlockStmt(declaration.body, environment);
+        return completion == Interpreter.NIL_RETURN ? null : completion;
     }
 
 }
\ No newline at end of file
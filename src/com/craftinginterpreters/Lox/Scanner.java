@@ -1,6 +1,10 @@
 package com.craftinginterpreters.Lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,16 +12,38 @@ import java.util.Map;
 import static com.craftinginterpreters.Lox.TokenType.*;
 
 
+/*
+*  Scans either a whole String or a Reader. A Reader is read in chunks into 'source', which only has
+*  to hold the token being scanned: when more input is needed the characters before 'start' are
+*  dropped. nextToken produces tokens on demand, scanTokens collects all of them into a list, and
+*  scanToBuffer records them in a TokenBuffer without making Token objects.
+* */
+
 class Scanner
 {
-    private final String source;
+    private static final int CHUNK = 8192;
+
+    private final Reader reader;
+    private final ErrorReporter reporter;
+    private char[] source;
+    // source[0, limit) holds input, everything up to 'start' has been scanned already.
+    private int limit;
     private final List<Token> tokens = new ArrayList<> ();
+    // Token made by the last scanToken, null for whitespace and comments.
+    private Token pending;
+    // Set by scanToBuffer, tokens are recorded here instead of made.
+    private TokenBuffer buffer;
+    private final SymbolTable symbols = new SymbolTable();
 
     private int start = 0;
     private int current  = 0;
     private int line = 1;
 
     private static final Map <String, TokenType> keywords;
+    // Every SymbolTable interns these first, the keyword with id i is KEYWORD_TYPES[i]. Identifiers are
+    // told from keywords without a substring.
+    static final String[] KEYWORD_NAMES;
+    private static final TokenType[] KEYWORD_TYPES;
 
     static {
         keywords = new HashMap<> ();
@@ -39,29 +65,119 @@ class Scanner
         keywords.put("var", VAR);
         keywords.put("jabtak", JABTAK);
         keywords.put("break", BREAK);
+        keywords.put("spawn", SPAWN);
+
+        KEYWORD_NAMES = keywords.keySet().toArray(new String[0]);
+        KEYWORD_TYPES = new TokenType[KEYWORD_NAMES.length];
+        for (int i = 0; i < KEYWORD_NAMES.length; i++){
+            KEYWORD_TYPES[i] = keywords.get(KEYWORD_NAMES[i]);
+        }
     }
 
     Scanner(String aInSource)
     {
-        this.source = aInSource;
+        this(aInSource, Lox.CONSOLE);
+    }
+
+    Scanner(String aInSource, ErrorReporter aInReporter)
+    {
+        this.reader = null;
+        this.reporter = aInReporter;
+        this.source = aInSource.toCharArray();
+        this.limit = source.length;
+    }
+
+    Scanner(Reader aInReader)
+    {
+        this(aInReader, Lox.CONSOLE);
+    }
+
+    Scanner(Reader aInReader, ErrorReporter aInReporter)
+    {
+        this.reader = aInReader;
+        this.reporter = aInReporter;
+        this.source = new char[CHUNK];
+        this.limit = 0;
     }
 
     private boolean isAtEnd()
     {
-        return (current >=source.length());
+        return current >= limit && !fill();
+    }
+
+    // Makes source[current + ahead] available if the input has it.
+    private boolean available(int ahead)
+    {
+        while (current + ahead >= limit)
+        {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    private boolean fill()
+    {
+        if (reader == null) return false;
+
+        if (start > 0)
+        {
+            System.arraycopy(source, start, source, 0, limit - start);
+            limit -= start;
+            current -= start;
+            start = 0;
+        }
+        if (limit == source.length) source = Arrays.copyOf(source, source.length * 2);
+
+        try {
+            int read = reader.read(source, limit, source.length - limit);
+            if (read <= 0) return false;
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     List<Token> scanTokens()
     {
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+        return tokens;
+    }
+
+    // Only for a String source: the buffer refers to tokens by their offsets in it.
+    TokenBuffer scanToBuffer()
+    {
+        if (reader != null) throw new IllegalStateException("scanToBuffer needs the whole source");
+
+        buffer = new TokenBuffer(source, symbols);
         while (!isAtEnd())
         {
             start = current;
             scanToken();
         }
+        buffer.add(EOF, current, 0, line);
+        return buffer;
+    }
 
-        /* pushing EOF token at the end to make a cleaner parser */
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+    // Next token of the input, EOF at the end.
+    Token nextToken()
+    {
+        pending = null;
+        while (pending == null)
+        {
+            if (isAtEnd())
+            {
+                /* an EOF token at the end makes a cleaner parser */
+                return new Token(EOF, "", null, line);
+            }
+            start = current;
+            scanToken();
+        }
+        return pending;
     }
 
     private void scanToken()
@@ -72,6 +188,8 @@ class Scanner
             case ')' : addToken(RIGHT_PAREN);break;
             case '{' : addToken(LEFT_BRACE);break;
             case '}' : addToken(RIGHT_BRACE);break;
+            case '[' : addToken(LEFT_BRACKET);break;
+            case ']' : addToken(RIGHT_BRACKET);break;
             case ',' : addToken(COMMA);break;
             case '.' : addToken(DOT);break;
             case '-' : addToken(MINUS);break;
@@ -84,7 +202,8 @@ class Scanner
             case '>' : addToken(match('=') ? GREATER_EQUAL: GREATER);break;
             case '/' :
                 if (match('/')){
-                    while(peek() != '\n' && !isAtEnd()) advance();
+                    // Comments aren't kept, moving start along lets fill drop them.
+                    while(peek() != '\n' && !isAtEnd()) { advance(); start = current; }
                 } else if (match('*')){
                     // increase count for each /* , and decrease for each */ break from here once count is 0.
                     int lOpen = 1 ;
@@ -102,8 +221,9 @@ class Scanner
                         }
                         if (peek() == '\n') line++;
                         advance();
+                        start = current;
                     }
-                    if (isAtEnd() && lOpen !=0 ) Lox.error(line, "Nested comments are not terminated");
+                    if (isAtEnd() && lOpen !=0 ) reporter.error(line, "Nested comments are not terminated");
                 }
                 else {
                     addToken(SLASH);
@@ -125,14 +245,15 @@ class Scanner
                     identifier();
                 } else {
 
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
         }
     }
     private char advance()
     {
+        available(0);
         current++;
-        return source.charAt(current-1);
+        return source[current-1];
     }
 
     private void addToken(TokenType aInType)
@@ -142,14 +263,19 @@ class Scanner
 
     private void addToken(TokenType aInType, Object aInLiteral)
     {
-        String text = source.substring(start, current);
-        tokens.add(new Token(aInType, text, aInLiteral, line));
+        if (buffer != null)
+        {
+            buffer.add(aInType, start, current - start, line);
+            return;
+        }
+        String text = new String(source, start, current - start);
+        pending = new Token(aInType, text, aInLiteral, line);
     }
 
     private boolean match(char ch)
     {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != ch) return false;
+        if (source[current] != ch) return false;
 
         current++;
         return true;
@@ -158,7 +284,7 @@ class Scanner
     private  char peek ()
     {
         if (isAtEnd()) return '\0';
-        else return source.charAt(current);
+        else return source[current];
     }
 
     private void string()
@@ -171,13 +297,18 @@ class Scanner
 
         if (isAtEnd())
         {
-            Lox.error(line, "unterminated string");
+            reporter.error(line, "unterminated string");
             return;
         }
 
         advance();
 
-        String value = source.substring(start+1, current-1);
+        if (buffer != null)
+        {
+            addToken(STRING);
+            return;
+        }
+        String value = new String(source, start+1, current-start-2);
         addToken(STRING, value);
     }
 
@@ -196,13 +327,14 @@ class Scanner
 
             while(isDigit(peek())) advance();
         }
-        addToken(NUMBER, Double.parseDouble(source.substring(start,current)));
+        if (buffer != null) addToken(NUMBER);
+        else addToken(NUMBER, Double.parseDouble(new String(source, start, current-start)));
     }
 
     private char peekNext()
     {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!available(1)) return '\0';
+        return source[current + 1];
     }
 
     private boolean isAlpha(char ch)
@@ -215,12 +347,21 @@ class Scanner
     private void identifier() {
         while (isAlphanumeric(peek())) advance();
 
-        String lText = source.substring(start, current);
+        int symbol = symbols.intern(source, start, current);
+        TokenType lType = keyword(symbol);
+        if (buffer != null)
+        {
+            addToken(lType == null ? IDENTIFIERS : lType);
+            return;
+        }
 
-        TokenType lType = keywords.get(lText);
-        if (lType == null) lType = IDENTIFIERS;
+        pending = new Token(lType == null ? IDENTIFIERS : lType, symbols.name(symbol), null, line);
+    }
 
-        addToken(lType);
+    // The keyword an interned name is, null for identifiers.
+    static TokenType keyword(int symbol)
+    {
+        return symbol < KEYWORD_TYPES.length ? KEYWORD_TYPES[symbol] : null;
     }
 
     private boolean isAlphanumeric(char ch)
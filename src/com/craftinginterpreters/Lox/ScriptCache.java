@@ -0,0 +1,794 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  On-disk cache of compiled scripts. An entry is the statement list after Optimizer and Resolver, in
+*  a compact binary form, stored under a 128 bit hash of the script's bytes. On a hit Lox.runFile gets
+*  the statements back without running Scanner, Parser, Optimizer or Resolver.
+*
+*  Entry layout: MAGIC, FORMAT_VERSION, the fingerprint of the compiler, the source hash, then the
+*  statements. Strings (lexemes, string literals) are written once and referred to by index after.
+*  Only what the front end produces is stored: the Interpreter's runtime state on the nodes
+*  (Binary.state, Variable.binding, ...) starts fresh like after a parse.
+*
+*  Q: How are stale entries rejected after an upgrade?
+*  A: The fingerprint is a hash of FORMAT_VERSION and the size and modification time of the
+*     interpreter's jar, or of every class file when it runs from a classes directory. Any rebuild is a
+*     different fingerprint, and an entry written by another build is a miss which is overwritten.
+*     FORMAT_VERSION only has to change with the layout. Stat'ing the files costs far less than reading
+*     them, a hit has to be cheaper than scanning and parsing a small script.
+*
+*  Q: Why not SHA-256?
+*  A: Looking it up through java.security costs ~45 ms on every start, more than compiling a small
+*     script. The key only has to tell scripts apart, not resist forgery (whoever can write the cache
+*     directory can write the scripts too), so it is MurmurHash3 x64 128 (SourceHash).
+*
+*  Q: What happens when the cache is unusable?
+*  A: Nothing visible: an entry which can't be read, is corrupt or can't be written is a miss and the
+*     script is compiled as usual. Entries are written to a temporary file and moved in place, so a
+*     concurrent run never reads half an entry.
+* */
+
+final class ScriptCache {
+    private static final int MAGIC = 0x4a4c4f58; // "JLOX"
+    private static final int FORMAT_VERSION = 3;
+    // Longer strings aren't cached, e.g. a huge rope folded by Optimizer.
+    private static final int MAX_STRING = 1 << 20;
+
+    private static final int HASH_LENGTH = 16;
+
+    // Node tags, 0 is null.
+    private static final byte EXPRESSION = 1, PRINT = 2, VAR = 3, BLOCK = 4, IF = 5, WHILE = 6,
+            BREAK = 7, FUNCTION = 8, RETURN = 9, PARALLEL = 10;
+    private static final byte BINARY = 1, GROUPING = 2, UNARY = 3, LITERAL = 4, VARIABLE = 5,
+            ASSIGN = 6, LOGICAL = 7, CALL = 8, SPAWN = 9, ARRAY = 10, INDEX = 11, INDEX_SET = 12;
+    // Literal value tags.
+    private static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+    private final Path directory;
+    private byte[] fingerprint;
+
+    ScriptCache(Path directory){
+        this.directory = directory;
+    }
+
+    // The hash scripts are keyed by, usable with DigestInputStream.
+    static MessageDigest digest(){
+        return new SourceHash();
+    }
+
+    static byte[] hash(byte[] source){
+        return digest().digest(source);
+    }
+
+    static byte[] hash(ByteBuffer source){
+        MessageDigest digest = digest();
+        digest.update(source.duplicate());
+        return digest.digest();
+    }
+
+    // Streams the file through the digest, it is never held in memory whole.
+    static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = digest();
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read; (read = in.read(chunk)) > 0; ){
+                digest.update(chunk, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    // The cached statements for a source hash, null on a miss.
+    List<Stmt> load(byte[] key){
+        Path entry = entry(key);
+        if (!Files.isRegularFile(entry)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            if (!Arrays.equals(readHash(in), fingerprint())) return null;
+            if (!Arrays.equals(readHash(in), key)) return null;
+            return new EntryReader(in).readStatements();
+        } catch (IOException | RuntimeException e){
+            // Unreadable or corrupt, compiled again and overwritten.
+            return null;
+        }
+    }
+
+    void store(byte[] key, List<Stmt> statements){
+        Path temp = null;
+        try {
+            byte[] fingerprint = fingerprint();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, hex(key), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(fingerprint);
+                out.write(key);
+                new EntryWriter(out).writeStatements(statements);
+            }
+            try {
+                Files.move(temp, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e){
+                Files.move(temp, entry(key), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e){
+            // Not cached, the next run compiles again.
+        } finally {
+            if (temp != null){
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored){
+                }
+            }
+        }
+    }
+
+    private Path entry(byte[] key){
+        return directory.resolve(hex(key) + ".loxc");
+    }
+
+    private byte[] fingerprint() throws IOException {
+        if (fingerprint != null) return fingerprint;
+
+        Path code;
+        try {
+            code = Paths.get(ScriptCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | RuntimeException e){
+            throw new IOException("Can't locate the interpreter's classes", e);
+        }
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(code)){
+            Path classes = code.resolve(ScriptCache.class.getPackageName().replace('.', '/'));
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(classes, "*.class")) {
+                entries.forEach(files::add);
+            }
+            Collections.sort(files);
+        } else {
+            files.add(code);
+        }
+
+        MessageDigest digest = digest();
+        DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+        out.writeInt(FORMAT_VERSION);
+        for (Path file : files){
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            out.writeUTF(file.getFileName().toString());
+            out.writeLong(attributes.size());
+            out.writeLong(attributes.lastModifiedTime().toMillis());
+        }
+        fingerprint = digest.digest();
+        return fingerprint;
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        return hash;
+    }
+
+    private static String hex(byte[] bytes){
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes){
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /*
+    * MurmurHash3 x64 128 with seed 0, fed incrementally: 16 byte blocks are mixed as they arrive, the
+    * rest waits in block for the next update or the final digest.
+    * */
+    private static final class SourceHash extends MessageDigest {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+        private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+        private final byte[] block = new byte[16];
+        private int buffered;
+        private long length;
+        private long h1;
+        private long h2;
+
+        SourceHash(){
+            super("MurmurHash3-128");
+        }
+
+        @Override
+        protected void engineUpdate(byte input){
+            engineUpdate(new byte[]{input}, 0, 1);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int count){
+            length += count;
+            if (buffered > 0){
+                int copy = Math.min(16 - buffered, count);
+                System.arraycopy(input, offset, block, buffered, copy);
+                buffered += copy;
+                offset += copy;
+                count -= copy;
+                if (buffered < 16) return;
+                mix(block, 0);
+                buffered = 0;
+            }
+            for (; count >= 16; offset += 16, count -= 16){
+                mix(input, offset);
+            }
+            System.arraycopy(input, offset, block, 0, count);
+            buffered = count;
+        }
+
+        private void mix(byte[] input, int at){
+            long k1 = (long) LONGS.get(input, at);
+            long k2 = (long) LONGS.get(input, at + 8);
+
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        @Override
+        protected byte[] engineDigest(){
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = buffered - 1; i >= 8; i--){
+                k2 = (k2 << 8) | (block[i] & 0xff);
+            }
+            for (int i = Math.min(buffered, 8) - 1; i >= 0; i--){
+                k1 = (k1 << 8) | (block[i] & 0xff);
+            }
+            if (buffered > 8) h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            if (buffered > 0) h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = finalMix(h1);
+            h2 = finalMix(h2);
+            h1 += h2;
+            h2 += h1;
+
+            byte[] hash = ByteBuffer.allocate(HASH_LENGTH).putLong(h1).putLong(h2).array();
+            engineReset();
+            return hash;
+        }
+
+        private static long finalMix(long k){
+            k = (k ^ (k >>> 33)) * 0xff51afd7ed558ccdL;
+            k = (k ^ (k >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return k ^ (k >>> 33);
+        }
+
+        @Override
+        protected int engineGetDigestLength(){
+            return HASH_LENGTH;
+        }
+
+        @Override
+        protected void engineReset(){
+            buffered = 0;
+            length = 0;
+            h1 = 0;
+            h2 = 0;
+        }
+    }
+
+    private static final class EntryWriter implements Stmt.Visitor<Void>, Expr.Visitor<Void> {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        EntryWriter(DataOutputStream out){
+            this.out = out;
+        }
+
+        void writeStatements(List<Stmt> statements) throws IOException {
+            out.writeInt(statements.size());
+            for (Stmt statement : statements){
+                write(statement);
+            }
+        }
+
+        // The visitors can't throw IOException, it travels through them wrapped.
+        private void write(Stmt stmt) throws IOException {
+            if (stmt == null){
+                out.writeByte(0);
+                return;
+            }
+            try {
+                stmt.accept(this);
+            } catch (WrappedIOException e){
+                throw e.getCause();
+            }
+            out.writeInt(stmt.line);
+        }
+
+        private void write(Expr expr) throws IOException {
+            if (expr == null){
+                out.writeByte(0);
+                return;
+            }
+            try {
+                expr.accept(this);
+            } catch (WrappedIOException e){
+                throw e.getCause();
+            }
+        }
+
+        private void write(Token token) throws IOException {
+            out.writeByte(token.type.ordinal());
+            writeString(token.lexeme);
+            writeValue(token.literal);
+            out.writeInt(token.line);
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null){
+                out.writeByte(NIL);
+            } else if (value instanceof Boolean){
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double){
+                out.writeByte(NUMBER);
+                out.writeDouble((Double) value);
+            } else if (Interpreter.isString(value)){
+                // Checked before a folded rope is flattened, it may be far too long to hold.
+                if (LoxString.of(value).length > MAX_STRING) throw new IOException("String too long to cache");
+                out.writeByte(STRING);
+                writeString(value.toString());
+            } else {
+                throw new IOException("Can't cache literal " + value);
+            }
+        }
+
+        // Index of a string written before, or the next index followed by the string.
+        private void writeString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null){
+                out.writeInt(index);
+                return;
+            }
+            if (string.length() > MAX_STRING) throw new IOException("String too long to cache");
+            out.writeInt(strings.size());
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private interface Body {
+            void write() throws IOException;
+        }
+
+        private Void node(byte tag, Body body){
+            try {
+                out.writeByte(tag);
+                body.write();
+            } catch (IOException e){
+                throw new WrappedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt){
+            return node(EXPRESSION, () -> write(stmt.expression));
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt){
+            return node(PRINT, () -> write(stmt.expression));
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt){
+            return node(VAR, () -> {
+                write(stmt.name);
+                write(stmt.initializer);
+                out.writeInt(stmt.slot);
+            });
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt){
+            return node(BLOCK, () -> {
+                writeStatements(stmt.statements);
+                out.writeInt(stmt.slotCount);
+            });
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt){
+            return node(IF, () -> {
+                write(stmt.expr);
+                write(stmt.ifBlock);
+                write(stmt.elseBlock);
+            });
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt){
+            return node(WHILE, () -> {
+                write(stmt.condition);
+                write(stmt.body);
+            });
+        }
+
+        @Override
+        public Void visitParallelStmt(Stmt.Parallel stmt){
+            return node(PARALLEL, () -> {
+                write(stmt.keyword);
+                write(stmt.name);
+                write(stmt.start);
+                write(stmt.comparison);
+                write(stmt.end);
+                out.writeBoolean(stmt.operator != null);
+                if (stmt.operator != null) write(stmt.operator);
+                write(stmt.accumulator);
+                write(stmt.body);
+                out.writeInt(stmt.slotCount);
+            });
+        }
+
+        // Parser never sets destBlock, the Interpreter unwinds to the nearest loop.
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt){
+            return node(BREAK, () -> {});
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt){
+            return node(FUNCTION, () -> {
+                write(stmt.name);
+                out.writeInt(stmt.params.size());
+                for (Token param : stmt.params){
+                    write(param);
+                }
+                writeStatements(stmt.body);
+                out.writeBoolean(stmt.memo);
+                out.writeInt(stmt.slot);
+                out.writeInt(stmt.slotCount);
+            });
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt){
+            return node(RETURN, () -> {
+                write(stmt.keyword);
+                write(stmt.value);
+            });
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr){
+            return node(BINARY, () -> {
+                write(expr.left);
+                write(expr.operator);
+                write(expr.right);
+            });
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr){
+            return node(GROUPING, () -> write(expr.expression));
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr){
+            return node(UNARY, () -> {
+                write(expr.operator);
+                write(expr.right);
+            });
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr){
+            return node(LITERAL, () -> writeValue(expr.value));
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr){
+            return node(VARIABLE, () -> {
+                write(expr.name);
+                out.writeInt(expr.depth);
+                out.writeInt(expr.slot);
+            });
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr){
+            return node(ASSIGN, () -> {
+                write(expr.name);
+                write(expr.Value);
+                out.writeInt(expr.depth);
+                out.writeInt(expr.slot);
+            });
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr){
+            return node(LOGICAL, () -> {
+                write(expr.operator);
+                write(expr.left);
+                write(expr.right);
+            });
+        }
+
+        @Override
+        public Void visitcallExpr(Expr.call expr){
+            return node(CALL, () -> {
+                write(expr.callee);
+                write(expr.paren);
+                out.writeInt(expr.Arguments.size());
+                for (Expr argument : expr.Arguments){
+                    write(argument);
+                }
+            });
+        }
+
+        @Override
+        public Void visitSpawnExpr(Expr.Spawn expr){
+            return node(SPAWN, () -> {
+                write(expr.keyword);
+                write(expr.call);
+            });
+        }
+
+        @Override
+        public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr){
+            return node(ARRAY, () -> {
+                write(expr.bracket);
+                out.writeInt(expr.elements.size());
+                for (Expr element : expr.elements){
+                    write(element);
+                }
+            });
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr){
+            return node(INDEX, () -> {
+                write(expr.object);
+                write(expr.bracket);
+                write(expr.index);
+            });
+        }
+
+        @Override
+        public Void visitIndexSetExpr(Expr.IndexSet expr){
+            return node(INDEX_SET, () -> {
+                write(expr.object);
+                write(expr.bracket);
+                write(expr.index);
+                write(expr.value);
+            });
+        }
+    }
+
+    private static final class WrappedIOException extends RuntimeException {
+        WrappedIOException(IOException cause){
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause(){
+            return (IOException) super.getCause();
+        }
+    }
+
+    private static final class EntryReader {
+        private static final TokenType[] TYPES = TokenType.values();
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        EntryReader(DataInputStream in){
+            this.in = in;
+        }
+
+        List<Stmt> readStatements() throws IOException {
+            int count = in.readInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++){
+                statements.add(readStmt());
+            }
+            return statements;
+        }
+
+        private Stmt readStmt() throws IOException {
+            byte tag = in.readByte();
+            if (tag == 0) return null;
+            Stmt stmt = readStmt(tag);
+            stmt.line = in.readInt();
+            return stmt;
+        }
+
+        private Stmt readStmt(byte tag) throws IOException {
+            switch (tag){
+                case EXPRESSION:
+                    return new Stmt.Expression(readExpr());
+                case PRINT:
+                    return new Stmt.Print(readExpr());
+                case VAR: {
+                    Stmt.Var stmt = new Stmt.Var(readToken(), readExpr());
+                    stmt.slot = in.readInt();
+                    return stmt;
+                }
+                case BLOCK:
+                    return readBlock();
+                case IF:
+                    return new Stmt.If(readExpr(), (Stmt.Block) readStmt(), (Stmt.Block) readStmt());
+                case WHILE:
+                    return new Stmt.While(readExpr(), readStmt());
+                case BREAK:
+                    return new Stmt.Break(null);
+                case FUNCTION: {
+                    Token name = readToken();
+                    int count = in.readInt();
+                    List<Token> params = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++){
+                        params.add(readToken());
+                    }
+                    Stmt.Function stmt = new Stmt.Function(name, params, readStatements(), in.readBoolean());
+                    stmt.slot = in.readInt();
+                    stmt.slotCount = in.readInt();
+                    return stmt;
+                }
+                case RETURN:
+                    return new Stmt.Return(readToken(), readExpr());
+                case PARALLEL: {
+                    Token keyword = readToken();
+                    Token name = readToken();
+                    Expr start = readExpr();
+                    Token comparison = readToken();
+                    Expr end = readExpr();
+                    Token operator = in.readBoolean() ? readToken() : null;
+                    Expr.Variable accumulator = (Expr.Variable) readExpr();
+                    Stmt.Parallel stmt = new Stmt.Parallel(keyword, name, start, comparison, end, operator,
+                            accumulator, (Stmt.Block) readStmt());
+                    stmt.slotCount = in.readInt();
+                    return stmt;
+                }
+                default:
+                    throw new IOException("Bad statement tag " + tag);
+            }
+        }
+
+        private Stmt.Block readBlock() throws IOException {
+            Stmt.Block block = new Stmt.Block(readStatements());
+            block.slotCount = in.readInt();
+            return block;
+        }
+
+        private Expr readExpr() throws IOException {
+            byte tag = in.readByte();
+            switch (tag){
+                case 0:
+                    return null;
+                case BINARY:
+                    return new Expr.Binary(readExpr(), readToken(), readExpr());
+                case GROUPING:
+                    return new Expr.Grouping(readExpr());
+                case UNARY:
+                    return new Expr.Unary(readToken(), readExpr());
+                case LITERAL:
+                    return new Expr.Literal(readValue());
+                case VARIABLE: {
+                    Expr.Variable expr = new Expr.Variable(readToken());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    return expr;
+                }
+                case ASSIGN: {
+                    Expr.Assign expr = new Expr.Assign(readToken(), readExpr());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    return expr;
+                }
+                case LOGICAL:
+                    return new Expr.Logical(readToken(), readExpr(), readExpr());
+                case CALL: {
+                    Expr callee = readExpr();
+                    Token paren = readToken();
+                    int count = in.readInt();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++){
+                        arguments.add(readExpr());
+                    }
+                    return new Expr.call(callee, paren, arguments);
+                }
+                case SPAWN: {
+                    Token keyword = readToken();
+                    Expr call = readExpr();
+                    if (!(call instanceof Expr.call)) throw new IOException("Spawn of a non call");
+                    return new Expr.Spawn(keyword, (Expr.call) call);
+                }
+                case ARRAY: {
+                    Token bracket = readToken();
+                    int count = in.readInt();
+                    List<Expr> elements = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++){
+                        elements.add(readExpr());
+                    }
+                    return new Expr.ArrayLiteral(bracket, elements);
+                }
+                case INDEX:
+                    return new Expr.Index(readExpr(), readToken(), readExpr());
+                case INDEX_SET:
+                    return new Expr.IndexSet(readExpr(), readToken(), readExpr(), readExpr());
+                default:
+                    throw new IOException("Bad expression tag " + tag);
+            }
+        }
+
+        // Lexemes come from the string table, the Tokens of one name share it like after a scan.
+        private Token readToken() throws IOException {
+            TokenType type = TYPES[in.readUnsignedByte()];
+            String lexeme = readString();
+            Object literal = readValue();
+            int line = in.readInt();
+            return new Token(type, lexeme, literal, line);
+        }
+
+        private Object readValue() throws IOException {
+            byte tag = in.readByte();
+            switch (tag){
+                case NIL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case NUMBER:
+                    return in.readDouble();
+                case STRING:
+                    return readString();
+                default:
+                    throw new IOException("Bad value tag " + tag);
+            }
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if (index < strings.size()) return strings.get(index);
+            if (index != strings.size()) throw new IOException("Bad string index " + index);
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  Tree walker whose Binary and Unary nodes specialize themselves on the operand types they see.
+*
+*  Every node starts UNINITIALIZED, the first evaluation runs the generic Interpreter.binary and
+*  records what it saw in node.state:
+*
+*      NUMBER  : both operands were numbers. Operands are evaluated with evaluateDouble, so a tree like
+*                a * b + c only boxes the final result instead of every intermediate one.
+*      STRING  : both operands were strings ('+' and '>' only).
+*      GENERIC : anything else, same as Interpreter.
+*
+*  When a specialized node gets an operand of another type it deoptimizes: state becomes GENERIC for
+*  good and the operation is finished with the values already computed, so operands are never
+*  evaluated twice.
+*
+*  An element of an array holding only numbers (see LoxArray) is read by evaluateDouble straight from
+*  the array's double[], so a[i] * b[i] doesn't box either element.
+*
+*  Q: Why a state field and not replacing the node in its parent like Truffle does?
+*  A: Expr nodes are immutable and don't know their parent. The state field is read once per evaluation
+*     and only ever moves UNINITIALIZED -> specialized -> GENERIC, so it has the same effect.
+* */
+
+class SpecializingInterpreter extends Interpreter {
+    static final int UNINITIALIZED = 0;
+    static final int NUMBER = 1;
+    static final int STRING = 2;
+    static final int GENERIC = 3;
+
+    /*
+    * Thrown by evaluateDouble when the value isn't a number, carries the value so that the caller can
+    * continue generically. No stack trace, it is part of normal control flow.
+    */
+    private static class UnexpectedResult extends RuntimeException {
+        final Object value;
+
+        UnexpectedResult(Object value){
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    SpecializingInterpreter(){}
+
+    SpecializingInterpreter(Interpreter spawner){
+        super(spawner);
+    }
+
+    /*
+    * Tasks specialize the same nodes concurrently. A state written by one thread can be overwritten
+    * by another, which is harmless: every specialized path deoptimizes when its operands don't fit.
+    * */
+    @Override
+    Interpreter forTask(){
+        return new SpecializingInterpreter(this);
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr){
+        switch (expr.state){
+            case NUMBER:
+                try {
+                    return executeNumber(expr);
+                } catch (UnexpectedResult result){
+                    return result.value;
+                }
+            case STRING:
+                return executeString(expr);
+            case GENERIC:
+                return super.visitBinaryExpr(expr);
+            default:
+                Object leftValue = evaluate(expr.left);
+                Object rightValue = evaluate(expr.right);
+                expr.state = specialize(expr.operator.type, leftValue, rightValue);
+                return binary(expr.operator, leftValue, rightValue);
+        }
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr){
+        if (expr.operator.type != TokenType.MINUS) return super.visitUnaryExpr(expr);
+
+        switch (expr.state){
+            case NUMBER:
+                try {
+                    return -evaluateDouble(expr.right);
+                } catch (UnexpectedResult result){
+                    expr.state = GENERIC;
+                    checkNumberOperand(expr.operator, result.value);
+                    return -(double) result.value;
+                }
+            case GENERIC:
+                return super.visitUnaryExpr(expr);
+            default:
+                Object rightValue = evaluate(expr.right);
+                expr.state = rightValue instanceof Double ? NUMBER : GENERIC;
+                checkNumberOperand(expr.operator, rightValue);
+                return -(double) rightValue;
+        }
+    }
+
+    private static int specialize(TokenType operator, Object leftValue, Object rightValue){
+        if (leftValue instanceof Double && rightValue instanceof Double){
+            return NUMBER;
+        }
+        if (isString(leftValue) && isString(rightValue)
+                && (operator == TokenType.PLUS || operator == TokenType.GREATER)){
+            return STRING;
+        }
+        return GENERIC;
+    }
+
+    /*
+    * Evaluates expr to an unboxed double. Specialized arithmetic nodes are computed directly,
+    * anything else is evaluated and unboxed. Throws UnexpectedResult when the value isn't a number.
+    */
+    private double evaluateDouble(Expr expr){
+        if (expr instanceof Expr.Binary){
+            Expr.Binary binary = (Expr.Binary) expr;
+            if (binary.state == NUMBER && isArithmetic(binary.operator.type)){
+                return executeDouble(binary);
+            }
+        } else if (expr instanceof Expr.Unary){
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (unary.state == NUMBER && unary.operator.type == TokenType.MINUS){
+                try {
+                    return -evaluateDouble(unary.right);
+                } catch (UnexpectedResult result){
+                    unary.state = GENERIC;
+                    checkNumberOperand(unary.operator, result.value);
+                    return -(double) result.value;
+                }
+            }
+        } else if (expr instanceof Expr.Grouping){
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Index){
+            return indexDouble((Expr.Index) expr);
+        } else if (expr instanceof Expr.Literal){
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Double) return (Double) value;
+            throw new UnexpectedResult(value);
+        }
+
+        Object value = evaluate(expr);
+        if (value instanceof Double) return (Double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    // Element of an array, read straight from its double[] while it has one.
+    private double indexDouble(Expr.Index expr){
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        if (object instanceof LoxArray){
+            LoxArray array = (LoxArray) object;
+            double[] numbers = array.numbers();
+            if (numbers != null){
+                int position = array.position(expr.bracket, index);
+                if (position < numbers.length) return numbers[position];
+            }
+        }
+        Object value = Interpreter.index(expr.bracket, object, index);
+        if (value instanceof Double) return (Double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    private static boolean isArithmetic(TokenType operator){
+        return operator == TokenType.PLUS || operator == TokenType.MINUS
+                || operator == TokenType.STAR || operator == TokenType.SLASH;
+    }
+
+    // NUMBER state, boxes the result once.
+    private Object executeNumber(Expr.Binary expr){
+        if (isArithmetic(expr.operator.type)){
+            return executeDouble(expr);
+        }
+
+        double left;
+        double right;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResult result){
+            return deoptimize(expr, result.value, evaluate(expr.right));
+        }
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResult result){
+            return deoptimize(expr, left, result.value);
+        }
+
+        switch (expr.operator.type){
+            case GREATER:       return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS:          return left < right;
+            case LESS_EQUAL:    return left <= right;
+            // Same as Double.equals, which is what isEqual ends up calling.
+            case EQUAL_EQUAL:   return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            case BANG_EQUAL:    return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+        }
+        return deoptimize(expr, left, right);
+    }
+
+    // NUMBER state of an arithmetic operator, nothing is boxed unless it deoptimizes.
+    private double executeDouble(Expr.Binary expr){
+        double left;
+        double right;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResult result){
+            return unboxed(deoptimize(expr, result.value, evaluate(expr.right)));
+        }
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResult result){
+            return unboxed(deoptimize(expr, left, result.value));
+        }
+
+        switch (expr.operator.type){
+            case PLUS:  return left + right;
+            case MINUS: return left - right;
+            case STAR:  return left * right;
+            default:
+                // Same check as Interpreter.binary.
+                if ((int) right == 0){
+                    throw new RuntimeError(expr.operator,
+                            "Invalid operation, can't divide by zero");
+                }
+                return left / right;
+        }
+    }
+
+    private static double unboxed(Object value){
+        if (value instanceof Double) return (Double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    private Object executeString(Expr.Binary expr){
+        Object leftValue = evaluate(expr.left);
+        Object rightValue = evaluate(expr.right);
+        if (isString(leftValue) && isString(rightValue)){
+            if (expr.operator.type == TokenType.PLUS){
+                return binary(expr.operator, leftValue, rightValue);
+            }
+            return leftValue.toString().compareToIgnoreCase(rightValue.toString()) > 0;
+        }
+        return deoptimize(expr, leftValue, rightValue);
+    }
+
+    private static Object deoptimize(Expr.Binary expr, Object leftValue, Object rightValue){
+        expr.state = GENERIC;
+        return binary(expr.operator, leftValue, rightValue);
+    }
+}
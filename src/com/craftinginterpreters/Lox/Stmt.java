@@ -13,7 +13,9 @@ abstract class Stmt {
     R visitBreakStmt(Break stmt);
     R visitFunctionStmt(Function stmt);
     R visitReturnStmt(Return stmt);
+    R visitParallelStmt(Parallel stmt);
  }
+    int line = 0;
 static  class Expression extends Stmt {
   Expression ( Expr expression  ) {
     this.expression = expression;
@@ -51,6 +53,7 @@ static  class Var extends Stmt {
 
     final Token name;
     final Expr initializer;
+    int slot = -1;
 } 
 static  class Block extends Stmt {
   Block ( List<Stmt> statements  ) {
@@ -63,6 +66,7 @@ static  class Block extends Stmt {
     }
 
     final List<Stmt> statements;
+    int slotCount = 0;
 } 
 static  class If extends Stmt {
   If ( Expr expr, Stmt.Block ifBlock, Stmt.Block elseBlock  ) {
@@ -107,10 +111,11 @@ static  class Break extends Stmt {
     final Stmt destBlock;
 } 
 static  class Function extends Stmt {
-  Function ( Token name, List<Token> params, List<Stmt> body  ) {
+  Function ( Token name, List<Token> params, List<Stmt> body, boolean memo  ) {
     this.name = name;
     this.params = params;
     this.body = body;
+    this.memo = memo;
 }
 
     @Override
@@ -121,8 +126,10 @@ static  class Function extends Stmt {
     final Token name;
     final List<Token> params;
     final List<Stmt> body;
-}
-
+    final boolean memo;
+    int slot = -1;
+    int slotCount = 0;
+} 
 static  class Return extends Stmt {
   Return ( Token keyword, Expr value  ) {
     this.keyword = keyword;
@@ -137,6 +144,33 @@ static  class Return extends Stmt {
     final Token keyword;
     final Expr value;
 } 
+static  class Parallel extends Stmt {
+  Parallel ( Token keyword, Token name, Expr start, Token comparison, Expr end, Token operator, Expr.Variable accumulator, Stmt.Block body  ) {
+    this.keyword = keyword;
+    this.name = name;
+    this.start = start;
+    this.comparison = comparison;
+    this.end = end;
+    this.operator = operator;
+    this.accumulator = accumulator;
+    this.body = body;
+}
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitParallelStmt(this);
+    }
+
+    final Token keyword;
+    final Token name;
+    final Expr start;
+    final Token comparison;
+    final Expr end;
+    final Token operator;
+    final Expr.Variable accumulator;
+    final Stmt.Block body;
+    int slotCount = 0;
+} 
 
   abstract <R> R accept(Visitor<R> visitor);
 }
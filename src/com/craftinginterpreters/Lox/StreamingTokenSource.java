@@ -0,0 +1,43 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.function.Supplier;
+
+/*
+*  Pulls tokens one at a time from Scanner::nextToken or ByteScanner::nextToken. Only the current and
+*  the previous token are kept, so the tokens of a large script are garbage as soon as the Parser has
+*  built its nodes from them.
+* */
+
+class StreamingTokenSource implements TokenSource {
+    private final Supplier<Token> scanner;
+    private Token previous;
+    private Token current;
+
+    StreamingTokenSource(Supplier<Token> scanner){
+        this.scanner = scanner;
+        this.current = scanner.get();
+    }
+
+    @Override
+    public TokenType peekType(){
+        return current.type;
+    }
+
+    @Override
+    public Token peek(){
+        return current;
+    }
+
+    @Override
+    public Token previous(){
+        return previous;
+    }
+
+    @Override
+    public void advance(){
+        if (current.type != TokenType.EOF){
+            previous = current;
+            current = scanner.get();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.craftinginterpreters.Lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+*  Interns the identifiers of one scan. The Scanner looks every identifier up straight from the source
+*  characters, so an identifier seen before costs no substring, and all its Tokens share one lexeme
+*  String. Ids are small ints for telling keywords apart: every table starts with the keywords, so
+*  Scanner.keyword can map a low id to its TokenType.
+*
+*  Q: Why one table per scan instead of one for the whole process?
+*  A: A process wide table has to be locked by every compile at once, never forgets a name, and its
+*     ids would mean the same name everywhere only if everything kept them. Nothing does: globals are
+*     looked up by the lexeme String (see Environment), so a table only has to live as long as the
+*     Scanner, or the TokenBuffer which makes Tokens from its offsets later.
+* */
+
+final class SymbolTable {
+    // Open addressing: an entry is id + 1, 0 is empty.
+    private int[] table = new int[64];
+    private String[] names = new String[32];
+    private int[] hashes = new int[32];
+    private int count = 0;
+
+    SymbolTable(){
+        for (String keyword : Scanner.KEYWORD_NAMES){
+            intern(keyword);
+        }
+    }
+
+    int intern(String name){
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    int intern(char[] source, int start, int end){
+        int hash = hash(source, start, end);
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask){
+            int entry = table[i];
+            if (entry == 0) break;
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) return id;
+        }
+
+        return add(new String(source, start, end - start), hash);
+    }
+
+    // ASCII name straight from a byte buffer, see ByteScanner.
+    int intern(ByteBuffer source, int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++){
+            hash = 31 * hash + (source.get(i) & 0xff);
+        }
+        hash ^= hash >>> 16;
+
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask){
+            int entry = table[i];
+            if (entry == 0) break;
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) return id;
+        }
+
+        byte[] bytes = new byte[end - start];
+        source.get(start, bytes);
+        return add(new String(bytes, StandardCharsets.ISO_8859_1), hash);
+    }
+
+    private int add(String name, int hash){
+        int id = count++;
+        if (id == names.length){
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        if (count * 2 > table.length){
+            rehash();
+        } else {
+            insert(table, id);
+        }
+        return id;
+    }
+
+    String name(int id){
+        return names[id];
+    }
+
+    private static int hash(char[] source, int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++){
+            hash = 31 * hash + source[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, char[] source, int start, int end){
+        if (name.length() != end - start) return false;
+        for (int i = start; i < end; i++){
+            if (name.charAt(i - start) != source[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(String name, ByteBuffer source, int start, int end){
+        if (name.length() != end - start) return false;
+        for (int i = start; i < end; i++){
+            if (name.charAt(i - start) != (source.get(i) & 0xff)) return false;
+        }
+        return true;
+    }
+
+    private void insert(int[] into, int id){
+        int mask = into.length - 1;
+        int i = hashes[id] & mask;
+        while (into[i] != 0){
+            i = (i + 1) & mask;
+        }
+        into[i] = id + 1;
+    }
+
+    private void rehash(){
+        int[] grown = new int[table.length * 2];
+        for (int id = 0; id < count; id++){
+            insert(grown, id);
+        }
+        table = grown;
+    }
+}
@@ -0,0 +1,112 @@
+package com.craftinginterpreters.Lox;
+
+import java.util.Arrays;
+
+import static com.craftinginterpreters.Lox.TokenType.*;
+
+/*
+*  Scanned tokens as parallel primitive arrays (type, start, length, line) over the source characters
+*  instead of one Token object each. A Token, with its lexeme and literal, is only made when the
+*  Parser asks for one: for names, operators and literals it builds nodes from, and for errors.
+*  Punctuation it only checks with peekType is never materialized.
+*
+*  Made by Scanner.scanToBuffer, the Parser reads it as a TokenSource.
+* */
+
+class TokenBuffer implements TokenSource {
+    private static final TokenType[] TYPES = TokenType.values();
+    // Punctuation always has the same text, the first one materialized is shared by the rest.
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    private final char[] source;
+    // The Scanner's table, a name is looked up in it again when its Token is made.
+    private final SymbolTable symbols;
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] lines = new int[1024];
+    private int count = 0;
+
+    private int current = 0;
+    // Materialized previous token, previous() is often asked twice for the same one.
+    private Token previous;
+    private int previousIndex = -1;
+
+    TokenBuffer(char[] source, SymbolTable symbols){
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    void add(TokenType type, int start, int length, int line){
+        if (count == types.length){
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    int size(){
+        return count;
+    }
+
+    Token token(int index){
+        TokenType type = TYPES[types[index]];
+        int start = starts[index];
+        int length = lengths[index];
+        int line = lines[index];
+
+        switch (type){
+            case IDENTIFIERS: {
+                return new Token(type, symbols.name(symbols.intern(source, start, start + length)), null, line);
+            }
+            case STRING: {
+                String lexeme = new String(source, start, length);
+                return new Token(type, lexeme, lexeme.substring(1, length - 1), line);
+            }
+            case NUMBER: {
+                String lexeme = new String(source, start, length);
+                return new Token(type, lexeme, Double.parseDouble(lexeme), line);
+            }
+            case EOF:
+                return new Token(type, "", null, line);
+            default:
+                String lexeme = FIXED_LEXEMES[type.ordinal()];
+                if (lexeme == null){
+                    lexeme = new String(source, start, length);
+                    FIXED_LEXEMES[type.ordinal()] = lexeme;
+                }
+                return new Token(type, lexeme, null, line);
+        }
+    }
+
+    @Override
+    public TokenType peekType(){
+        return TYPES[types[current]];
+    }
+
+    @Override
+    public Token peek(){
+        return token(current);
+    }
+
+    @Override
+    public Token previous(){
+        if (previousIndex != current - 1){
+            previous = token(current - 1);
+            previousIndex = current - 1;
+        }
+        return previous;
+    }
+
+    @Override
+    public void advance(){
+        if (types[current] != EOF.ordinal()) current++;
+    }
+}
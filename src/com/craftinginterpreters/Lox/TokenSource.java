@@ -0,0 +1,19 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  What the Parser reads tokens from. The Parser only ever looks at the current token and the one it
+*  just consumed, so a source only has to keep that window: a Scanner can produce tokens on demand
+*  instead of scanning the whole file into a list first.
+* */
+
+interface TokenSource {
+    // Type of the current token, EOF once the input is exhausted.
+    TokenType peekType();
+
+    Token peek();
+
+    Token previous();
+
+    // Consumes the current token unless it is EOF.
+    void advance();
+}
@@ -4,7 +4,7 @@ enum TokenType
 {
     // single character tokens
 
-    LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
+    LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE, LEFT_BRACKET, RIGHT_BRACKET,
     COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
 
 
@@ -21,7 +21,7 @@ enum TokenType
     //KEYWORDS
 
     AND, CLASS, ELSE, FALSE, FUN, FIRSE, IF, NIL, OR,
-    PRINT, RETURN, SUPER, THIS, TRUE, VAR, JABTAK, BREAK,
+    PRINT, RETURN, SUPER, THIS, TRUE, VAR, JABTAK, BREAK, SPAWN,
 
     EOF
 }
\ No newline at end of file
@@ -0,0 +1,454 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.craftinginterpreters.Lox.OpCode.*;
+
+/*
+*  Stack based VM running the bytecode produced by Compiler in a single dispatch loop.
+*
+*  Layout of the value stack for a call:
+*      [ ... | callee | slot 0 (arg 0) ... slot frameSize-1 | operand stack ... ]
+*                       ^ frame.base
+*
+*  Globals are an Environment, so natives and the error messages are the same ones the tree walker has.
+* */
+
+class VM {
+    private static final int FRAMES_MAX = 64 * 1024;
+
+    /*
+    * Constant for GET_GLOBAL/SET_GLOBAL, caches the global's Binding after the first lookup in the same
+    * way Expr.Variable does for the tree walker.
+    */
+    static class GlobalSite {
+        final Token name;
+        Environment.Binding binding;
+
+        GlobalSite(Token name){
+            this.name = name;
+        }
+    }
+
+    // What a MemoFunction calls on a miss: the function, on a VM of its own, as a spawned task does.
+    private static class Memoized implements SLoxCallable {
+        private final VMFunction function;
+        private final VM owner;
+        private final Token name;
+
+        Memoized(VMFunction function, VM owner, Token name){
+            this.function = function;
+            this.owner = owner;
+            this.name = name;
+        }
+
+        @Override
+        public int arity(){
+            return function.arity;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments){
+            return new VM(owner).call(function, arguments, name);
+        }
+
+        @Override
+        public String toString(){
+            return function.toString();
+        }
+    }
+
+    private static class CallFrame {
+        VMFunction function;
+        int ip;
+        int base;
+    }
+
+    final Environment globals;
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    // Where print writes and runtime errors go, as for the Interpreter.
+    PrintWriter out = Interpreter.STDOUT;
+    ErrorReporter reporter = Lox.CONSOLE;
+
+    VM() {
+        globals = new Environment();
+        Interpreter.defineNatives(globals);
+    }
+
+    // Runs a spawned task, with the spawner's globals, output and reporter and a stack of its own.
+    private VM(VM spawner) {
+        globals = spawner.globals;
+        out = spawner.out;
+        reporter = spawner.reporter;
+    }
+
+    void interpret(VMFunction script){
+        sp = 0;
+        frameCount = 0;
+        stack[sp++] = script;
+        pushFrame(script, sp, null);
+        try {
+            run();
+        } catch (RuntimeError error){
+            reporter.runtimeError(error);
+        }
+        LoxTask.reportFailures(globals);
+        // Drop references, the stack outlives the script in the REPL.
+        Arrays.fill(stack, 0, stack.length, null);
+        sp = 0;
+    }
+
+    // Body of a task: calls function with arguments on this VM's empty stack.
+    private Object call(VMFunction function, List<Object> arguments, Token paren){
+        stack[sp++] = function;
+        for (Object argument : arguments){
+            stack[sp++] = argument;
+        }
+        pushFrame(function, 1, paren);
+        run();
+        return stack[0];
+    }
+
+    private void pushFrame(VMFunction function, int base, Token token){
+        if (frameCount == FRAMES_MAX){
+            throw new RuntimeError(token, "Stack overflow.");
+        }
+        if (frameCount == frames.length){
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null){
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+
+        int needed = base + function.frameSize + function.maxStack + 1;
+        if (needed > stack.length){
+            stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+        }
+        // Slots which are not parameters start uninitialized.
+        for (int i = base + function.arity; i < base + function.frameSize; i++){
+            stack[i] = null;
+        }
+
+        frame.function = function;
+        frame.ip = 0;
+        frame.base = base;
+        sp = base + function.frameSize;
+    }
+
+    // Calls a callee which isn't a VMFunction, the result replaces callee and arguments on the stack.
+    private void callOther(Object callee, int argCount, Token paren){
+        if (!(callee instanceof SLoxCallable)){
+            throw new RuntimeError(paren, "only classes and function can be called");
+        }
+        SLoxCallable function = (SLoxCallable) callee;
+        if (argCount != function.arity()){
+            throw new RuntimeError(paren, "Expected arguments: " + function.arity() +
+                    ", recieved arguments: " + argCount);
+        }
+        List<Object> arguments = new ArrayList<>(argCount);
+        for (int i = sp - argCount; i < sp; i++){
+            arguments.add(stack[i]);
+        }
+        Object result;
+        try {
+            result = function.call(null, arguments);
+        } catch (NativeError error){
+            throw new RuntimeError(paren, error.getMessage());
+        }
+        sp -= argCount;
+        stack[sp - 1] = result;
+    }
+
+    private void run(){
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.function.chunk.code;
+        List<Object> constants = frame.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+        Object[] stack = this.stack;
+
+        for (;;){
+            byte instruction = code[ip++];
+            switch (instruction){
+                case CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = constants.get(index);
+                    break;
+                }
+                case NIL:   stack[sp++] = null; break;
+                case TRUE:  stack[sp++] = true; break;
+                case FALSE: stack[sp++] = false; break;
+                case POP:   sp--; break;
+
+                case GET_LOCAL: {
+                    Object value = stack[base + (code[ip++] & 0xff)];
+                    if (value == null){
+                        Token name = frame.function.chunk.tokens[ip - 2];
+                        throw new RuntimeError(name,
+                                "[RuntimeError] Uninitialized variable '"+ name.lexeme+"'.");
+                    }
+                    stack[sp++] = value;
+                    break;
+                }
+                case SET_LOCAL:
+                    stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                    break;
+                case DEFINE_LOCAL:
+                    stack[base + (code[ip++] & 0xff)] = stack[--sp];
+                    break;
+                case CLEAR_LOCALS: {
+                    int first = base + (code[ip] & 0xff);
+                    int count = code[ip + 1] & 0xff;
+                    ip += 2;
+                    Arrays.fill(stack, first, first + count, null);
+                    break;
+                }
+                case GET_GLOBAL: {
+                    GlobalSite site = (GlobalSite) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Environment.Binding binding = site.binding;
+                    if (binding == null || binding.owner != globals){
+                        binding = globals.bindingOf(site.name);
+                        // Undefined, let get report it.
+                        if (binding == null) globals.get(site.name);
+                        site.binding = binding;
+                    }
+                    // Uninitialized, let get report it.
+                    Object value = binding.get();
+                    stack[sp++] = value != null ? value : globals.get(site.name);
+                    break;
+                }
+                case SET_GLOBAL: {
+                    GlobalSite site = (GlobalSite) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Environment.Binding binding = site.binding;
+                    if (binding == null || binding.owner != globals){
+                        binding = globals.bindingOf(site.name);
+                        // Undefined, let assign report it.
+                        if (binding == null) globals.assign(site.name, null);
+                        site.binding = binding;
+                    }
+                    binding.set(stack[sp - 1]);
+                    break;
+                }
+                case DEFINE_GLOBAL: {
+                    Token name = (Token) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    globals.define(name.lexeme, stack[--sp]);
+                    break;
+                }
+
+                case EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case NOT_EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    if (a instanceof Double && b instanceof Double){
+                        double x = (Double) a;
+                        double y = (Double) b;
+                        switch (instruction){
+                            case GREATER:       stack[sp - 1] = x > y; continue;
+                            case GREATER_EQUAL: stack[sp - 1] = x >= y; continue;
+                            case LESS:          stack[sp - 1] = x < y; continue;
+                            case LESS_EQUAL:    stack[sp - 1] = x <= y; continue;
+                            case ADD:           stack[sp - 1] = x + y; continue;
+                            case SUBTRACT:      stack[sp - 1] = x - y; continue;
+                            case MULTIPLY:      stack[sp - 1] = x * y; continue;
+                        }
+                        // Division checks for zero, leave it to the shared implementation.
+                    }
+                    stack[sp - 1] = Interpreter.binary(frame.function.chunk.tokens[ip - 1], a, b);
+                    break;
+                }
+                case NOT:
+                    stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                    break;
+                case NEGATE: {
+                    Object value = stack[sp - 1];
+                    Interpreter.checkNumberOperand(frame.function.chunk.tokens[ip - 1], value);
+                    stack[sp - 1] = -(double) value;
+                    break;
+                }
+
+                case PRINT:
+                    out.println(Interpreter.Stringify(stack[--sp]));
+                    break;
+                case JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!Interpreter.isTruthy(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+
+                case CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    Token paren = frame.function.chunk.tokens[ip - 1];
+                    Object callee = stack[sp - 1 - argCount];
+
+                    if (callee instanceof VMFunction){
+                        VMFunction function = (VMFunction) callee;
+                        if (argCount != function.arity){
+                            throw new RuntimeError(paren, "Expected arguments: " + function.arity +
+                                    ", recieved arguments: " + argCount);
+                        }
+                        frame.ip = ip;
+                        pushFrame(function, sp - argCount, paren);
+                        stack = this.stack;
+                        frame = frames[frameCount - 1];
+                        code = function.chunk.code;
+                        constants = function.chunk.constants;
+                        ip = 0;
+                        base = frame.base;
+                    } else {
+                        callOther(callee, argCount, paren);
+                    }
+                    break;
+                }
+                /*
+                *  'return f(...)' with f a VMFunction: f replaces the returning function in its frame, so
+                *  recursion in tail position takes no frames. Any other callee is called as by CALL and the
+                *  RETURN after the instruction returns its result.
+                * */
+                case TAIL_CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    Token paren = frame.function.chunk.tokens[ip - 1];
+                    Object callee = stack[sp - 1 - argCount];
+                    if (!(callee instanceof VMFunction)){
+                        callOther(callee, argCount, paren);
+                        break;
+                    }
+                    VMFunction function = (VMFunction) callee;
+                    if (argCount != function.arity){
+                        throw new RuntimeError(paren, "Expected arguments: " + function.arity +
+                                ", recieved arguments: " + argCount);
+                    }
+                    // Callee and arguments go where the returning function and its arguments were.
+                    int from = sp - 1 - argCount;
+                    System.arraycopy(stack, from, stack, frame.base - 1, argCount + 1);
+                    frameCount--;
+                    pushFrame(function, frame.base, paren);
+                    stack = this.stack;
+                    frame = frames[frameCount - 1];
+                    code = function.chunk.code;
+                    constants = function.chunk.constants;
+                    ip = 0;
+                    base = frame.base;
+                    break;
+                }
+                case SPAWN: {
+                    int argCount = code[ip++] & 0xff;
+                    Token paren = frame.function.chunk.tokens[ip - 1];
+                    Object callee = stack[sp - 1 - argCount];
+                    List<Object> arguments = new ArrayList<>(argCount);
+                    for (int i = sp - argCount; i < sp; i++){
+                        arguments.add(stack[i]);
+                    }
+
+                    LoxTask task;
+                    if (callee instanceof VMFunction){
+                        VMFunction function = (VMFunction) callee;
+                        if (argCount != function.arity){
+                            throw new RuntimeError(paren, "Expected arguments: " + function.arity +
+                                    ", recieved arguments: " + argCount);
+                        }
+                        VM vm = new VM(this);
+                        task = LoxTask.start(() -> vm.call(function, arguments, paren), globals, reporter);
+                    } else {
+                        SLoxCallable function = Interpreter.callable(callee, argCount, paren);
+                        task = LoxTask.start(() -> {
+                            try {
+                                return function.call(null, arguments);
+                            } catch (NativeError error){
+                                throw new RuntimeError(paren, error.getMessage());
+                            }
+                        }, globals, reporter);
+                    }
+                    sp -= argCount;
+                    stack[sp - 1] = task;
+                    break;
+                }
+                case ARRAY: {
+                    int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object[] elements = Arrays.copyOfRange(stack, sp - count, sp);
+                    sp -= count;
+                    stack[sp++] = LoxArray.of(elements);
+                    break;
+                }
+                case GET_INDEX: {
+                    Token bracket = frame.function.chunk.tokens[ip - 1];
+                    Object index = stack[--sp];
+                    stack[sp - 1] = Interpreter.index(bracket, stack[sp - 1], index);
+                    break;
+                }
+                case SET_INDEX: {
+                    Token bracket = frame.function.chunk.tokens[ip - 1];
+                    Object value = stack[--sp];
+                    Object index = stack[--sp];
+                    stack[sp - 1] = Interpreter.setIndex(bracket, stack[sp - 1], index, value);
+                    break;
+                }
+                case MEMO:
+                    stack[sp - 1] = new MemoFunction(
+                            new Memoized((VMFunction) stack[sp - 1], this, frame.function.chunk.tokens[ip - 1]));
+                    break;
+                case RETURN: {
+                    Object result = stack[--sp];
+                    frameCount--;
+                    // Drop the callee, its slots and whatever is left on its operand stack.
+                    sp = frame.base - 1;
+                    if (frameCount == 0){
+                        // Where call() finds a task's result.
+                        stack[sp] = result;
+                        return;
+                    }
+                    stack[sp++] = result;
+
+                    frame = frames[frameCount - 1];
+                    code = frame.function.chunk.code;
+                    constants = frame.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+}
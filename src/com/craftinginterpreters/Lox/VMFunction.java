@@ -0,0 +1,24 @@
+package com.craftinginterpreters.Lox;
+
+/*
+*  A function compiled by Compiler. frameSize is the number of local slots (parameters first),
+*  maxStack the deepest the operand stack gets on top of them.
+* */
+
+class VMFunction {
+    final String name;
+    final int arity;
+    final Chunk chunk = new Chunk();
+    int frameSize;
+    int maxStack;
+
+    VMFunction(String name, int arity){
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public String toString(){
+        return "<fn " + name + ">";
+    }
+}
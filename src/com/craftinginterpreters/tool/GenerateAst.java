@@ -13,33 +13,39 @@ public class GenerateAst{
         }
         String outputDir = args[0];
 
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Binary    : Expr left, Token operator, Expr right",
+        defineAst(outputDir, "Expr", null, Arrays.asList(
+                "Binary    : Expr left, Token operator, Expr right : int state = 0",
                 "Grouping  : Expr expression",
-                "Unary     : Token operator, Expr right",
+                "Unary     : Token operator, Expr right : int state = 0",
                 "Literal   : Object value",
-                "Variable  : Token name",
-                "Assign    : Token name, Expr Value",
+                "Variable  : Token name : int depth = -1, int slot = -1, Environment.Binding binding = null",
+                "Assign    : Token name, Expr Value : int depth = -1, int slot = -1, Environment.Binding binding = null",
                 "Logical   : Token operator, Expr left, Expr right",
-                "call      : Expr callee, Token paren, List<Expr> Arguments"
+                "call      : Expr callee, Token paren, List<Expr> Arguments",
+                "Spawn     : Token keyword, Expr.call call",
+                "ArrayLiteral : Token bracket, List<Expr> elements",
+                "Index     : Expr object, Token bracket, Expr index",
+                "IndexSet  : Expr object, Token bracket, Expr index, Expr value"
 
         ));
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        // Line of the statement's first token, set by Parser, the Profiler reports it.
+        defineAst(outputDir, "Stmt", "int line = 0", Arrays.asList(
                 "Expression : Expr expression",
                 "Print : Expr expression",
-                "Var: Token name, Expr initializer",
-                "Block: List<Stmt> statements",
+                "Var: Token name, Expr initializer : int slot = -1",
+                "Block: List<Stmt> statements : int slotCount = 0",
                 "If: Expr expr, Stmt.Block ifBlock, Stmt.Block elseBlock",
                 "While : Expr condition, Stmt body",
                 "Break : Stmt destBlock",
-                "Function  : Token name, List<Token> params, List<Stmt> body",
-                "Return : Token keyword, Expr value"
+                "Function  : Token name, List<Token> params, List<Stmt> body, boolean memo : int slot = -1, int slotCount = 0",
+                "Return : Token keyword, Expr value",
+                "Parallel : Token keyword, Token name, Expr start, Token comparison, Expr end, Token operator, Expr.Variable accumulator, Stmt.Block body : int slotCount = 0"
         ));
     }
 
     private static void defineAst(
-            String outputDir, String baseName, List <String> types) throws IOException {
+            String outputDir, String baseName, String baseFields, List <String> types) throws IOException {
         String path =   outputDir + "/" + baseName + ".java";
         PrintWriter fileWriter = new PrintWriter(path, "UTF-8");
 
@@ -51,10 +57,20 @@ public class GenerateAst{
 
         defineVisitor(fileWriter, baseName, types);
 
+        // Optional mutable fields every subclass shares.
+        if (baseFields != null){
+            for (String field : baseFields.split(", ")){
+                fileWriter.println("    " + field + ";");
+            }
+        }
+
         for (String type : types){
-            String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(fileWriter, className, baseName, fields);
+            String[] parts = type.split(":");
+            String className = parts[0].trim();
+            String fields = parts[1].trim();
+            // Optional third part: mutable fields filled in by later passes (e.g. Resolver).
+            String mutableFields = parts.length > 2 ? parts[2].trim() : null;
+            defineType(fileWriter, className, baseName, fields, mutableFields);
         }
 
         // accept method in base class
@@ -66,7 +82,8 @@ public class GenerateAst{
     }
 
     private  static void defineType(
-            PrintWriter fileWriter, String className, String baseName, String fields){
+            PrintWriter fileWriter, String className, String baseName, String fields,
+            String mutableFields){
         fileWriter.println("static  class " + className + " extends " + baseName + " {");
 
         //constructor
@@ -96,6 +113,11 @@ public class GenerateAst{
         for  (String field : fieldList){
             fileWriter.println("    final " +  field + ";");
         }
+        if (mutableFields != null){
+            for (String field : mutableFields.split(", ")){
+                fileWriter.println("    " + field + ";");
+            }
+        }
 
         fileWriter.println("} ");
     }
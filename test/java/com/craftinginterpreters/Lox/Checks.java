@@ -0,0 +1,50 @@
+package com.craftinginterpreters.Lox;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+*  Regression checks, run by gradle check (and so gradle build):
+*
+*      gradle checks
+*
+*  ScriptChecks runs every test/scripts/*.lox on every engine, ScannerChecks compares the Scanner over
+*  a Reader with the String one, ScriptCacheChecks and SourceHashChecks cover the compiled script cache,
+*  EmbeddingChecks LoxContext and the javax.script engine. A failure prints what differed, any failure
+*  fails the build.
+*
+*  Q: Why not JUnit?
+*  A: The checks are few and mostly "run a script, compare its output", a main method needs nothing
+*     downloaded and runs the same from gradle and from a plain java command line.
+* */
+
+final class Checks {
+    private static final AtomicInteger failures = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        Path scripts = Paths.get(args.length > 0 ? args[0] : "test/scripts");
+        SourceHashChecks.run();
+        ScannerChecks.run();
+        ScriptCacheChecks.run(scripts);
+        EmbeddingChecks.run();
+        ScriptChecks.run(scripts);
+
+        if (failures.get() > 0){
+            System.err.println(failures.get() + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    static void fail(String message){
+        failures.incrementAndGet();
+        synchronized (System.err){
+            System.err.println("FAIL " + message);
+        }
+    }
+
+    static void check(boolean passed, String message){
+        if (!passed) fail(message);
+    }
+}
@@ -0,0 +1,149 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+/*
+*  LoxContext and the javax.script engine, which copies the globals a script defined or changed into its
+*  bindings after every eval and defines them again for the next one, so every value a script can leave
+*  in a global has to be accepted by LoxContext.set.
+* */
+
+final class EmbeddingChecks {
+    static void run(){
+        evalAfterEval("[1, 2, 3]", "var arr = [1, 2];", "push(arr, 3);", "print arr;");
+        passThrough("var arr = [1, 2];", "arr");
+        evalAfterEval("{a: 1, b: 2}", "var m = map(); m[\"a\"] = 1;", "m[\"b\"] = 2;", "print m;");
+        passThrough("var m = map();", "m");
+        evalAfterEval("1", "var ch = channel(1); send(ch, 1);", "print receive(ch);");
+        passThrough("var ch = channel(1);", "ch");
+        evalAfterEval("2", "fun f() { return 2; } var t = spawn f();", "print join(t);");
+        passThrough("fun f() { return 2; } var t = spawn f();", "t");
+        unjoinedTask();
+        lateTaskFailure();
+        globalsOfOneContext();
+        hostObjectBinding();
+        changedGlobalsOnly();
+    }
+
+    // Runs the scripts in turn on one engine, together they print expected.
+    private static void evalAfterEval(String expected, String... scripts){
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        try {
+            for (String script : scripts){
+                engine.eval(script);
+            }
+        } catch (Exception e){
+            Checks.fail("eval after \"" + scripts[0] + "\": " + e);
+            return;
+        }
+        Checks.check(out.toString().equals(expected + System.lineSeparator()),
+                "eval after \"" + scripts[0] + "\" printed \"" + out + "\", expected \"" + expected + "\"");
+    }
+
+    // A task's error nobody joins is the execution's error, at the end of it.
+    private static void unjoinedTask(){
+        String script = "fun f() { return 1 / 0; } spawn f();"
+                + " var start = clock(); jabtak (clock() - start < 0.5) {}";
+        try {
+            LoxProgram.compile(script).execute(new LoxContext(new StringWriter()));
+            Checks.fail("unjoined task: its error wasn't reported");
+        } catch (LoxException e){
+            Checks.check(e.getMessage().contains("divide by zero"), "unjoined task: reported " + e.getMessage());
+        }
+    }
+
+    // A task failing after its run ended is not reported by the next run on the same context.
+    private static void lateTaskFailure(){
+        LoxContext context = new LoxContext(new StringWriter());
+        try {
+            LoxProgram.compile("fun late() { var start = clock(); jabtak (clock() - start < 0.3) {} return 1 / 0; }"
+                    + " spawn late();").execute(context);
+            Thread.sleep(600);
+            LoxProgram.compile("var next = 1;").execute(context);
+        } catch (LoxException e){
+            Checks.fail("late task failure: reported by the next run: " + e.getMessage());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A context lists the globals defined in it, not names other contexts or locals used.
+    private static void globalsOfOneContext(){
+        try {
+            LoxProgram.compile("var elsewhere = 1; fun f(local) { var alsoLocal = local; return alsoLocal; }")
+                    .execute(new LoxContext(new StringWriter()));
+            LoxContext context = new LoxContext(new StringWriter());
+            LoxProgram.compile("var mine = 1;").execute(context);
+            Set<String> names = new HashSet<>();
+            context.forEachGlobal((name, value) -> names.add(name));
+            Checks.check(names.contains("mine") && names.contains("clock"), "forEachGlobal missed globals: " + names);
+            Checks.check(!names.contains("elsewhere") && !names.contains("f") && !names.contains("local")
+                    && !names.contains("alsoLocal"), "forEachGlobal listed another context's names: " + names);
+        } catch (LoxException e){
+            Checks.fail("forEachGlobal: " + e);
+        }
+    }
+
+    // A binding Lox has no value for doesn't fail eval, and stays in the bindings untouched.
+    private static void hostObjectBinding(){
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        Object host = new Object();
+        engine.put("host", host);
+        engine.put("n", 2);
+        try {
+            engine.eval("print n + 1;");
+        } catch (Exception e){
+            Checks.fail("eval with a host object bound: " + e);
+            return;
+        }
+        Checks.check(out.toString().equals("3" + System.lineSeparator()),
+                "eval with a host object bound printed " + out);
+        Checks.check(engine.get("host") == host,
+                "eval with a host object bound replaced it with " + engine.get("host"));
+    }
+
+    // Only what the script defined or changed goes back into the bindings, not natives or untouched values.
+    private static void changedGlobalsOnly(){
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+        engine.getContext().setWriter(new StringWriter());
+        engine.put("kept", 1);
+        engine.put("changed", 1);
+        try {
+            engine.eval("var added = \"a\"; changed = changed + 1;");
+        } catch (Exception e){
+            Checks.fail("eval changing globals: " + e);
+            return;
+        }
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        Checks.check(bindings.keySet().equals(Set.of("kept", "changed", "added")),
+                "eval changing globals left the bindings " + bindings.keySet());
+        Checks.check(Integer.valueOf(1).equals(bindings.get("kept")),
+                "eval replaced an unchanged binding with " + bindings.get("kept"));
+        Checks.check(Double.valueOf(2).equals(bindings.get("changed")) && "a".equals(bindings.get("added")),
+                "eval changing globals left changed = " + bindings.get("changed") + ", added = " + bindings.get("added"));
+    }
+
+    // The value of global name after script can be set into another context.
+    private static void passThrough(String script, String name){
+        LoxContext from = new LoxContext(new StringWriter());
+        LoxContext to = new LoxContext(new StringWriter());
+        try {
+            LoxProgram.compile(script).execute(from);
+            Object value = from.get(name);
+            to.set(name, value);
+            Checks.check(to.get(name) == value, "LoxContext.set of " + name + " from \"" + script + "\" changed it");
+        } catch (Exception e){
+            Checks.fail("LoxContext.set of " + name + " from \"" + script + "\": " + e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  A Reader is scanned a chunk of Scanner.CHUNK (8192) chars at a time, so a token or comment can start
+*  in one chunk and end in the next. These scan a source of several chunks, where every kind of token
+*  and comment straddles a boundary at some offset, from a Reader and from the String, and check both
+*  give the same tokens, lines and errors. ByteScanner, which has no chunks, is checked against the same
+*  tokens once.
+* */
+
+final class ScannerChecks {
+    private static final int CHUNK = 8192;
+
+    static void run(){
+        String source = source();
+        Errors errors = new Errors();
+        List<String> expected = scan(new Scanner(source, errors), errors);
+        // Shifting the whole source moves every token across the boundaries, the first difference is enough.
+        for (int shift = 0; shift < 64; shift++){
+            String shifted = " ".repeat(shift) + source;
+            if (!check("a Reader", new StringReader(shifted), expected, shift)) return;
+            if (!check("a Reader returning 7 chars at a time", new Trickle(shifted, 7), expected, shift)) return;
+        }
+        checkByteScanner(source, expected);
+    }
+
+    // Lines of tokens and comments, longer than a few chunks, and an identifier longer than one.
+    private static String source(){
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; source.length() < 3 * CHUNK; i++){
+            source.append("var name").append(i).append(" = ").append(i * 1.25).append(" >= 3;\n");
+            source.append("print \"a string of line ").append(i).append("\nwhich goes on\"; // a comment\n");
+            source.append("/* a /* nested */ block\ncomment */ fun f").append(i).append("(a, b) { return a != b; }\n");
+            if (i % 50 == 0) source.append("@\n");
+        }
+        source.append("var ").append("x".repeat(CHUNK + 100)).append(" = nil;\n");
+        source.append("print \"not terminated");
+        return source.toString();
+    }
+
+    private static boolean check(String how, Reader reader, List<String> expected, int shift){
+        Errors errors = new Errors();
+        List<String> tokens = scan(new Scanner(reader, errors), errors);
+        return report("Scanner over " + how + ", shifted by " + shift, tokens, expected);
+    }
+
+    // Fails with the first token which differs.
+    private static boolean report(String what, List<String> tokens, List<String> expected){
+        if (tokens.equals(expected)) return true;
+        int i = 0;
+        while (i < tokens.size() && i < expected.size() && tokens.get(i).equals(expected.get(i))) i++;
+        Checks.fail(what + ": token " + i + " is " + shorten(i < tokens.size() ? tokens.get(i) : "missing")
+                + ", expected " + shorten(i < expected.size() ? expected.get(i) : "none"));
+        return false;
+    }
+
+    private static void checkByteScanner(String source, List<String> expected){
+        try {
+            Path file = Files.createTempFile("lox-scan", ".lox");
+            try {
+                Files.writeString(file, source, StandardCharsets.UTF_8);
+                Errors errors = new Errors();
+                ByteScanner scanner = new ByteScanner(ByteScanner.map(file), errors);
+                List<String> tokens = new ArrayList<>();
+                Token token;
+                do {
+                    token = scanner.nextToken();
+                    tokens.add(token + " line " + token.line);
+                } while (token.type != TokenType.EOF);
+                tokens.addAll(errors.reported);
+                report("ByteScanner", tokens, expected);
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String shorten(String token){
+        return token.length() > 80 ? token.substring(0, 80) + "..." : token;
+    }
+
+    // Every token with its line, then the errors reported.
+    private static List<String> scan(Scanner scanner, Errors errors){
+        List<String> scanned = new ArrayList<>();
+        for (Token token : scanner.scanTokens()){
+            scanned.add(token + " line " + token.line);
+        }
+        scanned.addAll(errors.reported);
+        return scanned;
+    }
+
+    private static final class Errors implements ErrorReporter {
+        final List<String> reported = new ArrayList<>();
+
+        @Override
+        public void error(int line, String where, String message){
+            reported.add(ErrorReporter.format(line, where, message));
+        }
+
+        @Override
+        public void runtimeError(RuntimeError error){
+            throw error;
+        }
+    }
+
+    // Returns at most 'most' chars per read, as a slow stream might.
+    private static final class Trickle extends Reader {
+        private final String source;
+        private final int most;
+        private int position = 0;
+
+        Trickle(String source, int most){
+            this.source = source;
+            this.most = most;
+        }
+
+        @Override
+        public int read(char[] into, int offset, int length){
+            if (position == source.length()) return -1;
+            int count = Math.min(Math.min(length, most), source.length() - position);
+            source.getChars(position, position + count, into, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close(){
+        }
+    }
+}
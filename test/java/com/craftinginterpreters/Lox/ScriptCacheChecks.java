@@ -0,0 +1,132 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+*  Writes every script that compiles through ScriptCache and reads it back, the statements read must
+*  print the same as the ones written. The printout walks every field of every node and token, so a field the
+*  format forgets, or reads back different, shows up without listing the fields here.
+* */
+
+final class ScriptCacheChecks {
+    static void run(Path scripts) throws IOException {
+        Path directory = Files.createTempDirectory("lox-cache");
+        try {
+            ScriptCache cache = new ScriptCache(directory);
+            for (Path script : ScriptChecks.scripts(scripts)){
+                roundTrip(cache, script);
+            }
+            corruptEntries(cache, directory, ScriptChecks.scripts(scripts));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()){
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void roundTrip(ScriptCache cache, Path script) throws IOException {
+        byte[] source = Files.readAllBytes(script);
+        List<Stmt> statements = compile(new String(source, StandardCharsets.UTF_8));
+        // Scripts with compile errors are never cached.
+        if (statements == null) return;
+
+        byte[] key = ScriptCache.hash(source);
+        cache.store(key, statements);
+        List<Stmt> loaded = cache.load(key);
+        if (loaded == null){
+            Checks.fail("cache " + script.getFileName() + ": entry written but not read back");
+            return;
+        }
+        String written = print(statements);
+        String read = print(loaded);
+        if (!written.equals(read)){
+            Checks.fail("cache " + script.getFileName() + ": statements read back differ\n  written " + written
+                    + "\n  read    " + read);
+        }
+    }
+
+    // A damaged entry is a miss, not an error.
+    private static void corruptEntries(ScriptCache cache, Path directory, List<Path> scripts) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*.loxc")) {
+            for (Path entry : entries){
+                byte[] bytes = Files.readAllBytes(entry);
+                Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+            }
+        }
+        for (Path script : scripts){
+            Checks.check(cache.load(ScriptCache.hash(Files.readAllBytes(script))) == null,
+                    "cache " + script.getFileName() + ": a truncated entry isn't a miss");
+        }
+    }
+
+    // Like Lox.compile, null after a compile error.
+    private static List<Stmt> compile(String source){
+        List<String> errors = new ArrayList<>();
+        ErrorReporter reporter = new ErrorReporter(){
+            @Override
+            public void error(int line, String where, String message){
+                errors.add(message);
+            }
+
+            @Override
+            public void runtimeError(RuntimeError error){
+                errors.add(error.getMessage());
+            }
+        };
+        List<Stmt> statements = new Parser(new Scanner(source, reporter).scanToBuffer(), reporter).parse();
+        if (!errors.isEmpty()) return null;
+        statements = new Optimizer().optimize(statements);
+        new Resolver(reporter).resolve(statements);
+        return errors.isEmpty() ? statements : null;
+    }
+
+    static String print(Object node){
+        StringBuilder text = new StringBuilder();
+        print(text, node);
+        return text.toString();
+    }
+
+    private static void print(StringBuilder text, Object node){
+        if (node == null){
+            text.append("null");
+        } else if (node instanceof List){
+            text.append('[');
+            for (Object element : (List<?>) node){
+                print(text, element);
+                text.append(", ");
+            }
+            text.append(']');
+        } else if (node instanceof Expr || node instanceof Stmt || node instanceof Token){
+            text.append(node.getClass().getSimpleName()).append('(');
+            for (Field field : node.getClass().getDeclaredFields()){
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                field.setAccessible(true);
+                text.append(field.getName()).append('=');
+                try {
+                    print(text, field.get(node));
+                } catch (IllegalAccessException e){
+                    throw new IllegalStateException(e);
+                }
+                text.append(' ');
+            }
+            text.append(')');
+        } else {
+            // Literal values: a LoxString and the String it's read back as print the same.
+            text.append(node instanceof LoxString ? "String" : node.getClass().getSimpleName())
+                    .append(' ').append(node);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.craftinginterpreters.Lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/*
+*  Runs every test/scripts/NAME.lox with jlox on each engine and compares what it prints, stdout and
+*  stderr together, with NAME.expected. A run which exits with an error status ends in a line
+*  "[exit STATUS]". Where an engine prints something else on purpose, e.g. the VM rejecting a parallel
+*  loop, NAME.ENGINE.expected holds its output.
+*
+*  The tree engine runs each script twice with a fresh cache directory, the second run loads the
+*  statements the first one stored in ScriptCache. The other engines run with --no-cache.
+* */
+
+final class ScriptChecks {
+    private static final String[][] ENGINES = {
+            {"tree", "--engine=tree"},
+            {"specializing", "--engine=specializing", "--no-cache"},
+            {"closure", "--engine=closure", "--no-cache"},
+            {"vm", "--engine=vm", "--no-cache"},
+            // The tree walker scanning the mapped file, and the whole source into a TokenBuffer. The others
+            // scan it through a Reader.
+            {"mmap", "--scanner=mmap", "--no-cache"},
+            {"buffer", "--scanner=buffer", "--no-cache"},
+            // Every function is compiled on its first call.
+            {"jit", "--jit", "--jit-threshold=1", "--no-cache"},
+    };
+
+    static void run(Path scripts) throws Exception {
+        Path cache = Files.createTempDirectory("lox-cache");
+        ExecutorService runs = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (Path script : scripts(scripts)){
+                for (String[] engine : ENGINES){
+                    results.add(runs.submit(() -> {
+                        check(script, engine, cache.resolve(script.getFileName() + "." + engine[0]));
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> result : results){
+                result.get();
+            }
+        } finally {
+            runs.shutdown();
+            try (Stream<Path> files = Files.walk(cache)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()){
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    static List<Path> scripts(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".lox")).sorted().toList();
+        }
+    }
+
+    private static void check(Path script, String[] engine, Path cache) throws IOException, InterruptedException {
+        String name = script.getFileName().toString();
+        name = name.substring(0, name.length() - ".lox".length());
+        Path expectedFile = script.resolveSibling(name + "." + engine[0] + ".expected");
+        if (!Files.exists(expectedFile)) expectedFile = script.resolveSibling(name + ".expected");
+        if (!Files.exists(expectedFile)){
+            Checks.fail(script.getFileName() + ": no " + name + ".expected");
+            return;
+        }
+        String expected = Files.readString(expectedFile);
+
+        List<String> command = new ArrayList<>(List.of(java(), "-cp", System.getProperty("java.class.path"),
+                Lox.class.getName()));
+        for (int i = 1; i < engine.length; i++){
+            command.add(engine[i]);
+        }
+        boolean cached = !command.contains("--no-cache");
+        if (cached) command.add("--cache-dir=" + cache);
+        command.add(script.toString());
+
+        for (String run : cached ? new String[]{"", " (from the cache)"} : new String[]{""}){
+            String output = jlox(command);
+            if (!output.equals(expected)){
+                Checks.fail(script.getFileName() + " on " + engine[0] + run + "\n--- expected\n" + expected
+                        + "--- got\n" + output);
+                return;
+            }
+        }
+    }
+
+    private static String jlox(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int status = process.waitFor();
+        return status == 0 ? output : output + "[exit " + status + "]\n";
+    }
+
+    private static String java(){
+        return ProcessHandle.current().info().command().orElse("java");
+    }
+}
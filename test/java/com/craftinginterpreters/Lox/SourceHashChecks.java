@@ -0,0 +1,64 @@
+package com.craftinginterpreters.Lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/*
+*  Known answers for ScriptCache's SourceHash, MurmurHash3 x64 128 with seed 0. The digest is h1 then
+*  h2, each big-endian, so the reference h1 = 0xe34bbc7bbc071b6c, h2 = 0x7a433ca9c49a9347 of the fox
+*  below is e34bbc7bbc071b6c7a433ca9c49a9347.
+*
+*  The inputs cover an empty message, every tail length (1 to 15 bytes past a block) and messages of
+*  several blocks. Each one is also fed in two pieces split at every position, and as a ByteBuffer.
+* */
+
+final class SourceHashChecks {
+    private static final String[][] VECTORS = {
+            {"", "00000000000000000000000000000000"},
+            {"hell", "629942693e10f86792db0b82baeb5347"},
+            {"hello", "cbd8a7b341bd9b025b1e906a48ae1d19"},
+            {"hello ", "03cfb92719208575ec713ecbd342b0fd"},
+            {"hello w", "7552fd5459fe5513536b5526a1675925"},
+            {"hello wo", "f9d2c3093a3e369845e9804b38277826"},
+            {"hello wor", "944cd9aa8b8e849d6b2a284a57d12bba"},
+            {"The quick brown fox jumps over the lazy dog", "e34bbc7bbc071b6c7a433ca9c49a9347"},
+            {"The quick brown fox jumps over the lazy cog", "658ca970ff85269a43fee3eaa68e5c3e"},
+    };
+
+    static void run(){
+        for (String[] vector : VECTORS){
+            check(vector[0].getBytes(StandardCharsets.UTF_8), vector[1], '"' + vector[0] + '"');
+        }
+
+        // Bytes 0 to 255 twice and "abc", 32 blocks and a 3 byte tail.
+        byte[] blocks = new byte[515];
+        for (int i = 0; i < 512; i++){
+            blocks[i] = (byte) i;
+        }
+        blocks[512] = 'a';
+        blocks[513] = 'b';
+        blocks[514] = 'c';
+        check(blocks, "918fa8e7325d0bf5e035ef451e556623", "0..255 0..255 abc");
+    }
+
+    private static void check(byte[] input, String expected, String name){
+        String hash = HexFormat.of().formatHex(ScriptCache.hash(input));
+        Checks.check(hash.equals(expected), "SourceHash " + name + ": " + hash + ", expected " + expected);
+
+        Checks.check(HexFormat.of().formatHex(ScriptCache.hash(ByteBuffer.wrap(input))).equals(expected),
+                "SourceHash of a ByteBuffer " + name);
+
+        for (int split = 0; split <= input.length; split++){
+            MessageDigest digest = ScriptCache.digest();
+            digest.update(Arrays.copyOfRange(input, 0, split));
+            digest.update(input, split, input.length - split);
+            if (!HexFormat.of().formatHex(digest.digest()).equals(expected)){
+                Checks.fail("SourceHash " + name + " fed in two pieces split at " + split);
+                return;
+            }
+        }
+    }
+}